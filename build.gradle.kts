@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("io.freefair.lombok") version "8.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -25,8 +26,18 @@ dependencies {
     implementation("com.zaxxer:HikariCP:5.0.1")
     implementation("org.slf4j:slf4j-simple:2.0.9")
     implementation("com.google.code.gson:gson:2.10.1")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // gradle jmh -Pjmh.includes=FunkoCache para lanzar solo algunos benchmarks
+    (findProperty("jmh.includes") as String?)?.let { includes.set(it.split(",")) }
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    profilers.set(listOf("gc"))
+}
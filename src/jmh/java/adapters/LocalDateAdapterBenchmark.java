@@ -0,0 +1,52 @@
+package adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import enums.Modelo;
+import models.Funko;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización a JSON de funkos con {@link LocalDateAdapter}, uno a uno y en una lista de 1000 como hace exportJson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalDateAdapterBenchmark {
+    Gson gson;
+    Funko funko;
+    List<Funko> funkos;
+
+    @Setup
+    public void setUp() {
+        gson = new GsonBuilder().registerTypeAdapter(Funko.class, new LocalDateAdapter()).create();
+        Modelo[] modelos = Modelo.values();
+        funkos = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            funkos.add(Funko.builder().cod(UUID.randomUUID()).id2((long) i).nombre("Stitch Hula " + i)
+                    .modelo(modelos[i % modelos.length]).precio(10.99 + i).fechaLanzamiento(LocalDate.of(2023, 1 + i % 12, 1))
+                    .build());
+        }
+        funko = funkos.get(0);
+    }
+
+    @Benchmark
+    public String serializeOne() {
+        return gson.toJson(funko);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String serializeList() {
+        return gson.toJson(funkos);
+    }
+}
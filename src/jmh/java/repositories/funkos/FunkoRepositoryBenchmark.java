@@ -0,0 +1,68 @@
+package repositories.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import org.openjdk.jmh.annotations.*;
+import services.database.DataBaseManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * findById, findAll y save de {@link FunkoRepositoryImpl} sobre una base de datos H2 en memoria (-Ddb.protocol=mem)
+ * con {@code funkos} filas. Las migraciones se leen de src/main/resources, así que hay que lanzarlo desde la raíz
+ * del proyecto.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Ddb.protocol=mem", "-Ddb.url=funkos-jmh;DB_CLOSE_DELAY=-1"})
+public class FunkoRepositoryBenchmark {
+    @Param({"10000"})
+    int funkos;
+
+    FunkoRepositoryImpl repository;
+    AtomicLong siguienteId;
+
+    static Funko funko(long id) {
+        Modelo[] modelos = Modelo.values();
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Funko " + id).modelo(modelos[(int) (id % modelos.length)])
+                .precio(10 + id % 50).fechaLanzamiento(LocalDate.of(2020 + (int) (id % 4), 1 + (int) (id % 12), 1)).build();
+    }
+
+    // Cada iteración parte de la misma tabla, sin los que haya insertado save
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = FunkoRepositoryImpl.getInstance(DataBaseManager.getInstance());
+        repository.deleteAll().block();
+        List<Funko> iniciales = new ArrayList<>(funkos);
+        for (long id = 1; id <= funkos; id++) {
+            iniciales.add(funko(id));
+        }
+        repository.saveAll(iniciales).blockLast();
+        siguienteId = new AtomicLong(funkos + 1L);
+    }
+
+    @Benchmark
+    public Funko findById() {
+        return repository.findById(ThreadLocalRandom.current().nextLong(1, funkos + 1L)).block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long findAll() {
+        return repository.findAll().count().block();
+    }
+
+    @Benchmark
+    public Funko save() {
+        return repository.save(funko(siguienteId.getAndIncrement())).block();
+    }
+}
@@ -0,0 +1,101 @@
+package repositories.funkos;
+
+import enums.Modelo;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import models.Funko;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el mapeo de filas por posición de {@link FunkoRowMapper} con el antiguo mapeo por nombre de columna sobre
+ * SELECT *. Las filas son stubs en memoria para medir solo el coste del mapeo; con -prof gc se ve la memoria
+ * reservada por fila.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunkoRowMapperBenchmark {
+    private static final String[] SELECT_ALL = {"ID", "COD", "ID2", "NOMBRE", "MODELO", "PRECIO", "FECHALANZAMIENTO", "CREATEDAT", "UPDATEDAT"};
+    private static final String[] PROYECCION = {"ID2", "COD", "NOMBRE", "MODELO", "PRECIO", "FECHALANZAMIENTO"};
+
+    StubRow[] filasSelectAll;
+    StubRow[] filasProyeccion;
+    int i;
+
+    @Setup
+    public void setUp() {
+        filasSelectAll = new StubRow[1024];
+        filasProyeccion = new StubRow[1024];
+        Modelo[] modelos = Modelo.values();
+        for (int n = 0; n < filasSelectAll.length; n++) {
+            String cod = UUID.randomUUID().toString();
+            String modelo = modelos[n % modelos.length].name();
+            Float precio = 10.5f + n;
+            LocalDate fecha = LocalDate.of(2023, 1 + n % 12, 1);
+            filasSelectAll[n] = new StubRow(SELECT_ALL, new Object[]{(long) n, cod, (long) n, "Funko " + n, modelo, precio, fecha, null, null});
+            filasProyeccion[n] = new StubRow(PROYECCION, new Object[]{(long) n, cod, "Funko " + n, modelo, precio, fecha});
+        }
+    }
+
+    private int next() {
+        i = (i + 1) & 1023;
+        return i;
+    }
+
+    @Benchmark
+    public void porNombre(Blackhole bh) {
+        Row fila = filasSelectAll[next()];
+        bh.consume(Funko.builder()
+                .id2(fila.get("id2", Long.class))
+                .cod(UUID.fromString(fila.get("cod", String.class)))
+                .nombre(fila.get("nombre", String.class))
+                .modelo(Modelo.valueOf(fila.get("modelo", String.class)))
+                .precio(fila.get("precio", Float.class).doubleValue())
+                .fechaLanzamiento(fila.get("fechaLanzamiento", LocalDate.class))
+                .build());
+    }
+
+    @Benchmark
+    public void porPosicion(Blackhole bh) {
+        bh.consume(FunkoRowMapper.map(filasProyeccion[next()], null));
+    }
+
+    // Resuelve los nombres sin distinguir mayúsculas, como hace el driver de H2
+    static final class StubRow implements Row {
+        private final String[] columnas;
+        private final Object[] valores;
+
+        StubRow(String[] columnas, Object[] valores) {
+            this.columnas = columnas;
+            this.valores = valores;
+        }
+
+        @Override
+        public <T> T get(int index, Class<T> type) {
+            return type.cast(valores[index]);
+        }
+
+        @Override
+        public <T> T get(String name, Class<T> type) {
+            for (int c = 0; c < columnas.length; c++) {
+                if (columnas[c].equalsIgnoreCase(name)) {
+                    return type.cast(valores[c]);
+                }
+            }
+            throw new IllegalArgumentException("Columna desconocida: " + name);
+        }
+
+        @Override
+        public RowMetadata getMetadata() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package services.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la caché concurrente con la antigua implementación basada en LinkedHashMap.
+ * El 90% de las consultas van a claves presentes y el resto a claves que pueden no estar en la caché.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunkoCacheBenchmark {
+    @Param({"15", "1024"})
+    int maxSize;
+
+    FunkoCacheImpl cache;
+    LinkedHashMapFunkoCache legacy;
+    Funko[] funkos;
+
+    @Setup
+    public void setUp() {
+        cache = new FunkoCacheImpl(maxSize);
+        legacy = new LinkedHashMapFunkoCache(maxSize);
+        funkos = new Funko[maxSize * 2];
+        for (int i = 0; i < funkos.length; i++) {
+            funkos[i] = Funko.builder().cod(UUID.randomUUID()).id2((long) i).nombre("Funko " + i)
+                    .modelo(Modelo.DISNEY).precio(10.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+        }
+        for (int i = 0; i < maxSize; i++) {
+            cache.putNow((long) i, funkos[i]);
+            legacy.put((long) i, funkos[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    private long key() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return random.nextInt(10) == 0 ? random.nextInt(funkos.length) : random.nextInt(maxSize);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void getConcurrent1Thread(Blackhole bh) {
+        bh.consume(cache.getIfPresent(key()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void getConcurrent4Threads(Blackhole bh) {
+        bh.consume(cache.getIfPresent(key()));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void getConcurrentMaxThreads(Blackhole bh) {
+        bh.consume(cache.getIfPresent(key()));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void getLinkedHashMap1Thread(Blackhole bh) {
+        bh.consume(legacy.get(key()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void getLinkedHashMap4Threads(Blackhole bh) {
+        bh.consume(legacy.get(key()));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void getLinkedHashMapMaxThreads(Blackhole bh) {
+        bh.consume(legacy.get(key()));
+    }
+
+    private void mixedConcurrent(Blackhole bh) {
+        long key = key();
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            cache.putNow(key, funkos[(int) key]);
+        } else {
+            bh.consume(cache.getIfPresent(key));
+        }
+    }
+
+    private void mixedLinkedHashMap(Blackhole bh) {
+        long key = key();
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            legacy.put(key, funkos[(int) key]);
+        } else {
+            bh.consume(legacy.get(key));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void mixedConcurrent1Thread(Blackhole bh) {
+        mixedConcurrent(bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void mixedConcurrent4Threads(Blackhole bh) {
+        mixedConcurrent(bh);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void mixedConcurrentMaxThreads(Blackhole bh) {
+        mixedConcurrent(bh);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void mixedLinkedHashMap1Thread(Blackhole bh) {
+        mixedLinkedHashMap(bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void mixedLinkedHashMap4Threads(Blackhole bh) {
+        mixedLinkedHashMap(bh);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void mixedLinkedHashMapMaxThreads(Blackhole bh) {
+        mixedLinkedHashMap(bh);
+    }
+}
@@ -0,0 +1,58 @@
+package services.funkos;
+
+import models.ImportReport;
+import org.openjdk.jmh.annotations.*;
+import repositories.funkos.FunkoRepositoryImpl;
+import services.database.DataBaseManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importa un CSV de varios millones de filas generado con {@link FunkoCatalogGenerator} con el camino secuencial
+ * (rails = 0: lotes con flatMap sobre una sola cadena) y con el paralelo repartido por hash de id2 en distintos números
+ * de rails. Cada iteración borra la tabla e importa el fichero completo, sin notificaciones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FunkoImportBenchmark {
+    @Param({"2000000"})
+    int filas;
+
+    @Param({"0", "1", "2", "4", "8"})
+    int rails;
+
+    FunkosServiceImpl service;
+    Path csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DataBaseManager db = DataBaseManager.getInstance();
+        service = FunkosServiceImpl.getInstance(FunkoRepositoryImpl.getInstance(db), FunkosNotificationsImpl.getInstance());
+        csv = Files.createTempFile("funkos-import", ".csv");
+        FunkoCatalogGenerator.builder().seed(42).build().writeCsv(csv.toString(), filas).block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.deleteAll().block();
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public ImportReport importar() {
+        ImportReport report = rails == 0
+                ? service.importFromCsv(csv.toString(), false).block()
+                : service.importFromCsvParallel(csv.toString(), rails, false).block();
+        if (report.importados() != filas) {
+            throw new IllegalStateException("Importación incompleta: " + report);
+        }
+        return report;
+    }
+}
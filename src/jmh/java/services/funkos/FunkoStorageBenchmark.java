@@ -0,0 +1,40 @@
+package services.funkos;
+
+import org.openjdk.jmh.annotations.*;
+import routes.Routes;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura del CSV de ejemplo con loadCsv (BufferedReader y split) y con loadCsvMapped (fichero mapeado y parseo sobre
+ * los bytes). Cada operación lee el fichero completo; hay que lanzarlo desde la raíz del proyecto.
+ * <p>
+ * Solo mide el parseo: los funkos salen sin id2, así que no se reservan ids ni se abre la base de datos. La asignación
+ * de id2 y el guardado los mide FunkoImportBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunkoStorageBenchmark {
+    FunkoStorageImpl storage;
+    String ruta;
+
+    @Setup
+    public void setUp() {
+        storage = FunkoStorageImpl.getInstance();
+        ruta = Routes.getInstance().getRouteFunkosCsv();
+    }
+
+    @Benchmark
+    public Long loadCsv() {
+        return storage.loadCsv().count().block();
+    }
+
+    @Benchmark
+    public Long loadCsvMapped() {
+        return storage.loadCsvMapped(ruta).count().block();
+    }
+}
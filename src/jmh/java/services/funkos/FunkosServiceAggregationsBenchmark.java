@@ -0,0 +1,79 @@
+package services.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import org.openjdk.jmh.annotations.*;
+import repositories.funkos.FunkoRepositoryImpl;
+import services.database.DataBaseManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consultas de agregación de {@link FunkosServiceImpl} sobre una base de datos H2 en memoria (-Ddb.protocol=mem) con
+ * {@code funkos} filas, de las que una de cada cinco es de Stitch. Hay que lanzarlo desde la raíz del proyecto.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Ddb.protocol=mem", "-Ddb.url=funkos-jmh;DB_CLOSE_DELAY=-1"})
+public class FunkosServiceAggregationsBenchmark {
+    private static final String[] NOMBRES = {"Stitch Hula", "Iron Man", "Goku", "Mickey", "Peaky Blinders Tommy"};
+
+    @Param({"10000"})
+    int funkos;
+
+    FunkosServiceImpl service;
+
+    @Setup
+    public void setUp() {
+        DataBaseManager db = DataBaseManager.getInstance();
+        FunkoRepositoryImpl repository = FunkoRepositoryImpl.getInstance(db);
+        service = FunkosServiceImpl.getInstance(repository, FunkosNotificationsImpl.getInstance());
+        Modelo[] modelos = Modelo.values();
+        List<Funko> iniciales = new ArrayList<>(funkos);
+        for (long id = 1; id <= funkos; id++) {
+            iniciales.add(Funko.builder().cod(UUID.randomUUID()).id2(id).nombre(NOMBRES[(int) (id % NOMBRES.length)] + " " + id)
+                    .modelo(modelos[(int) (id % modelos.length)]).precio(10 + id % 50)
+                    .fechaLanzamiento(LocalDate.of(2020 + (int) (id % 4), 1 + (int) (id % 12), 1)).build());
+        }
+        repository.deleteAll().block();
+        repository.saveAll(iniciales).blockLast();
+    }
+
+    @Benchmark
+    public Funko expensiveFunko() {
+        return service.expensiveFunko().block();
+    }
+
+    @Benchmark
+    public Double averagePrice() {
+        return service.averagePrice().block();
+    }
+
+    @Benchmark
+    public Map<Modelo, Long> funkosByModelo() {
+        return service.funkosByModelo().block();
+    }
+
+    @Benchmark
+    public Map<Modelo, List<Funko>> groupByModelo() {
+        return service.groupByModelo().block();
+    }
+
+    @Benchmark
+    public List<Funko> funkosIn2023() {
+        return service.funkosIn2023().collectList().block();
+    }
+
+    @Benchmark
+    public Double numberStitch() {
+        return service.numberStitch().block();
+    }
+}
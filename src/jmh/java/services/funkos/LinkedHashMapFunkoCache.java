@@ -0,0 +1,31 @@
+package services.funkos;
+
+import models.Funko;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Réplica de la antigua FunkoCacheImpl (LinkedHashMap ordenado por acceso) para comparar en los benchmarks.
+ * La original no estaba sincronizada y se corrompía con varios hilos, así que aquí se protege con synchronized.
+ */
+class LinkedHashMapFunkoCache {
+    private final Map<Long, Funko> cache;
+
+    LinkedHashMapFunkoCache(int maxSize) {
+        this.cache = new LinkedHashMap<>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Funko> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Funko get(Long key) {
+        return cache.get(key);
+    }
+
+    synchronized void put(Long key, Funko value) {
+        cache.put(key, value);
+    }
+}
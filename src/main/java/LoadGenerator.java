@@ -0,0 +1,322 @@
+import enums.Modelo;
+import exceptions.Funko.FunkoNotFoundException;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import models.Funko;
+import models.IdGenerator;
+import models.ImportReport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import repositories.funkos.FunkoRepositoryImpl;
+import routes.Routes;
+import services.cache.CacheStats;
+import services.database.DataBaseManager;
+import services.funkos.FunkoCatalogGenerator;
+import services.funkos.FunkosNotificationsImpl;
+import services.funkos.FunkosServiceImpl;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generador de carga de extremo a extremo sobre FunkosService. Importa el CSV (o genera load.rows funkos) y lanza durante un tiempo una mezcla de
+ * lecturas y escrituras, a un ritmo fijo (load.rate operaciones por segundo, como mucho load.concurrency a la vez) o
+ * con load.concurrency clientes que encadenan operaciones sin pausa (load.rate=0). Al terminar muestra el rendimiento
+ * y las latencias de cada operación, el uso del pool de conexiones y las estadísticas de la caché.
+ * <p>
+ * Se configura con propiedades de sistema, por ejemplo:
+ * {@code -Dload.duration=30 -Dload.rate=2000 -Dload.concurrency=16 -Dload.mix=findById=60,save=10,update=20,deleteById=10}
+ * y, para no tocar el fichero de la base de datos, {@code -Ddb.protocol=mem -Ddb.url=funkos;DB_CLOSE_DELAY=-1}.
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "findById=55,findByNombre=10,findAll=1,save=12,update=15,deleteById=7";
+    private static final String[] NOMBRES = {"Stitch", "Iron Man", "Goku", "Mickey", "Spider", "Naruto"};
+    // Ids conocidos entre los que se eligen los de las operaciones; los guardados sustituyen a uno al azar
+    private static final int IDS_SIZE = 1 << 16;
+
+    private enum Operacion {
+        FIND_BY_ID("findById"), FIND_BY_NOMBRE("findByNombre"), FIND_ALL("findAll"),
+        SAVE("save"), UPDATE("update"), DELETE_BY_ID("deleteById");
+
+        private final String nombre;
+
+        Operacion(String nombre) {
+            this.nombre = nombre;
+        }
+
+        static Operacion of(String nombre) {
+            for (Operacion operacion : values()) {
+                if (operacion.nombre.equalsIgnoreCase(nombre)) {
+                    return operacion;
+                }
+            }
+            throw new IllegalArgumentException("Operación desconocida en load.mix: " + nombre);
+        }
+    }
+
+    // Latencias en microsegundos y resultados de una operación; el Recorder admite escrituras desde varios hilos
+    private static final class Medidas {
+        private final Recorder latencias = new Recorder(3);
+        private final LongAdder correctas = new LongAdder();
+        private final LongAdder noEncontrados = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+
+        void record(long inicio, Throwable error) {
+            latencias.recordValue(Math.max(0, (System.nanoTime() - inicio) / 1000));
+            if (error == null) {
+                correctas.increment();
+            } else if (error instanceof FunkoNotFoundException) {
+                noEncontrados.increment();
+            } else {
+                errores.increment();
+            }
+        }
+
+        void reset() {
+            latencias.reset();
+            correctas.reset();
+            noEncontrados.reset();
+            errores.reset();
+        }
+    }
+
+    private final FunkosServiceImpl service;
+    private final IdGenerator idGenerator = IdGenerator.getInstance();
+    private final AtomicLongArray ids = new AtomicLongArray(IDS_SIZE);
+    private final Operacion[] mezcla;
+    private final int[] pesos;
+    private final int pesoTotal;
+    private final Map<Operacion, Medidas> medidas = new EnumMap<>(Operacion.class);
+    // Cada operación sale de un hilo de cliente y no del hilo en el que terminó la anterior, que puede ser uno de
+    // los de Reactor que usa el propio servicio
+    private final Scheduler clientes;
+
+    private LoadGenerator(FunkosServiceImpl service, String mix, int concurrency) {
+        this.service = service;
+        this.clientes = Schedulers.newParallel("cliente", concurrency, true);
+        String[] partes = mix.split(",");
+        mezcla = new Operacion[partes.length];
+        pesos = new int[partes.length];
+        int acumulado = 0;
+        for (int i = 0; i < partes.length; i++) {
+            String[] parte = partes[i].trim().split("=");
+            mezcla[i] = Operacion.of(parte[0].trim());
+            acumulado += Integer.parseInt(parte[1].trim());
+            pesos[i] = acumulado;
+        }
+        pesoTotal = acumulado;
+        if (pesoTotal <= 0) {
+            throw new IllegalArgumentException("load.mix no tiene ninguna operación con peso: " + mix);
+        }
+        for (Operacion operacion : Operacion.values()) {
+            medidas.put(operacion, new Medidas());
+        }
+    }
+
+    public static void main(String[] args) {
+        Duration calentamiento = Duration.ofSeconds(Long.getLong("load.warmup", 5));
+        Duration duracion = Duration.ofSeconds(Long.getLong("load.duration", 30));
+        int rate = Integer.getInteger("load.rate", 0);
+        int concurrency = Integer.getInteger("load.concurrency", 8);
+        String csv = System.getProperty("load.csv", Routes.getInstance().getRouteFunkosCsv());
+        long filas = Long.getLong("load.rows", 0);
+
+        DataBaseManager db = DataBaseManager.getInstance();
+        FunkoRepositoryImpl repository = FunkoRepositoryImpl.getInstance(db);
+        FunkosServiceImpl service = FunkosServiceImpl.getInstance(repository, FunkosNotificationsImpl.getInstance());
+        LoadGenerator generator = new LoadGenerator(service, System.getProperty("load.mix", DEFAULT_MIX), concurrency);
+
+        if (filas > 0) {
+            // Catálogo sintético del tamaño pedido en vez del CSV
+            FunkoCatalogGenerator catalogo = FunkoCatalogGenerator.builder().seed(Long.getLong("load.seed", 42)).build();
+            long guardados = service.deleteAll().then(catalogo.saveTo(repository, filas, db.getBatchSize())).block();
+            System.out.println("Catálogo inicial: " + guardados + " funkos generados");
+        } else {
+            ImportReport report = service.importFromCsv(csv, false).block();
+            System.out.println("Catálogo inicial: " + report);
+        }
+        generator.seedIds();
+
+        System.out.printf(Locale.ROOT, "Carga durante %ds (tras %ds de calentamiento): %s, concurrencia %d, mezcla %s%n",
+                duracion.toSeconds(), calentamiento.toSeconds(), rate > 0 ? rate + " op/s" : "sin límite de ritmo",
+                concurrency, System.getProperty("load.mix", DEFAULT_MIX));
+        // Lo medido mientras el JIT compila y se abren las conexiones no cuenta
+        generator.run(rate, concurrency, calentamiento);
+        generator.medidas.values().forEach(Medidas::reset);
+
+        PoolSampler pool = new PoolSampler(db.getConnectionPool());
+        long inicio = System.nanoTime();
+        generator.run(rate, concurrency, duracion);
+        long nanos = System.nanoTime() - inicio;
+        pool.stop();
+
+        generator.printReport(nanos);
+        pool.print();
+        CacheStats cache = service.getCacheStats();
+        System.out.printf(Locale.ROOT, "Caché: %d/%d entradas, tasa de aciertos %.1f%%, %d desalojos, carga p99 %.2f ms%n",
+                cache.getSize(), cache.getMaxSize(), cache.hitRate() * 100, cache.getEvictionCount(), cache.getLoadLatencyP99() / 1e6);
+        System.exit(0);
+    }
+
+    private void seedIds() {
+        long[] iniciales = service.findAll().map(Funko::getId2).collectList().block()
+                .stream().mapToLong(Long::longValue).toArray();
+        if (iniciales.length == 0) {
+            throw new IllegalStateException("El catálogo inicial está vacío");
+        }
+        for (int i = 0; i < IDS_SIZE; i++) {
+            ids.set(i, iniciales[i % iniciales.length]);
+        }
+    }
+
+    private void run(int rate, int concurrency, Duration duracion) {
+        if (duracion.isZero()) {
+            return;
+        }
+        if (rate > 0) {
+            runAtRate(rate, concurrency, duracion);
+        } else {
+            runClosed(concurrency, duracion);
+        }
+    }
+
+    // Carga abierta: cada operación tiene su hora de salida y la latencia se cuenta desde ella, así que las esperas
+    // cuando el sistema no da abasto también se miden
+    private void runAtRate(int rate, int concurrency, Duration duracion) {
+        long periodo = 1_000_000_000L / rate;
+        long total = duracion.toNanos() / periodo;
+        long inicio = System.nanoTime();
+        Flux.interval(Duration.ofMillis(1))
+                .onBackpressureDrop()
+                .map(tick -> Math.min(total, (System.nanoTime() - inicio) / periodo + 1))
+                .distinctUntilChanged()
+                .takeUntil(debidas -> debidas >= total)
+                .scan(new long[]{0, 0}, (rango, debidas) -> new long[]{rango[1], debidas})
+                .concatMap(rango -> Flux.range(0, (int) (rango[1] - rango[0])).map(i -> inicio + (rango[0] + i) * periodo))
+                .flatMap(salida -> execute(salida), concurrency)
+                .blockLast();
+    }
+
+    // Carga cerrada: cada cliente lanza la siguiente operación cuando termina la anterior
+    private void runClosed(int concurrency, Duration duracion) {
+        long fin = System.nanoTime() + duracion.toNanos();
+        Flux.range(0, concurrency)
+                .flatMap(cliente -> Mono.defer(() -> execute(System.nanoTime())).repeat(() -> System.nanoTime() < fin),
+                        concurrency)
+                .blockLast();
+    }
+
+    private Mono<Void> execute(long inicio) {
+        return Mono.defer(() -> {
+            Operacion operacion = nextOperacion();
+            Medidas medida = medidas.get(operacion);
+            return run(operacion)
+                    .doOnSuccess(resultado -> medida.record(inicio, null))
+                    .doOnError(error -> medida.record(inicio, error))
+                    .onErrorResume(error -> Mono.empty())
+                    .then();
+        }).subscribeOn(clientes);
+    }
+
+    private Operacion nextOperacion() {
+        int valor = ThreadLocalRandom.current().nextInt(pesoTotal);
+        int i = 0;
+        while (valor >= pesos[i]) {
+            i++;
+        }
+        return mezcla[i];
+    }
+
+    private Mono<?> run(Operacion operacion) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (operacion) {
+            case FIND_BY_ID -> service.findById(randomId());
+            case FIND_BY_NOMBRE -> service.findByNombre(NOMBRES[random.nextInt(NOMBRES.length)]).count();
+            case FIND_ALL -> service.findAll().count();
+            case SAVE -> idGenerator.next().flatMap(id -> service.save(randomFunko(id)))
+                    .doOnNext(funko -> ids.set(ThreadLocalRandom.current().nextInt(IDS_SIZE), funko.getId2()));
+            case UPDATE -> service.update(randomFunko(randomId()));
+            case DELETE_BY_ID -> service.deleteById(randomId());
+        };
+    }
+
+    private long randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(IDS_SIZE));
+    }
+
+    private static Funko randomFunko(long id2) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Funko.builder().cod(UUID.randomUUID()).id2(id2)
+                .nombre(NOMBRES[random.nextInt(NOMBRES.length)] + " " + id2)
+                .modelo(Modelo.values()[random.nextInt(Modelo.values().length)])
+                .precio(Math.round(random.nextDouble(5, 100) * 100) / 100.0)
+                .fechaLanzamiento(LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1500)))
+                .build();
+    }
+
+    private void printReport(long nanos) {
+        double segundos = nanos / 1e9;
+        System.out.printf(Locale.ROOT, "%-13s %9s %9s %9s %9s %10s %10s %10s %10s%n", "Operación", "correctas",
+                "no encont", "errores", "op/s", "p50 ms", "p99 ms", "p999 ms", "máx ms");
+        long total = 0;
+        for (Operacion operacion : mezcla) {
+            Medidas medida = medidas.get(operacion);
+            Histogram histograma = medida.latencias.getIntervalHistogram();
+            long operaciones = histograma.getTotalCount();
+            total += operaciones;
+            System.out.printf(Locale.ROOT, "%-13s %9d %9d %9d %9.1f %10.2f %10.2f %10.2f %10.2f%n", operacion.nombre,
+                    medida.correctas.sum(), medida.noEncontrados.sum(), medida.errores.sum(), operaciones / segundos,
+                    histograma.getValueAtPercentile(50) / 1000.0, histograma.getValueAtPercentile(99) / 1000.0,
+                    histograma.getValueAtPercentile(99.9) / 1000.0, histograma.getMaxValue() / 1000.0);
+        }
+        System.out.printf(Locale.ROOT, "Total: %d operaciones en %.1fs (%.1f op/s)%n", total, segundos, total / segundos);
+    }
+
+    // Muestrea el pool cada 100 ms mientras dura la carga
+    private static final class PoolSampler {
+        private final ConnectionPool pool;
+        private final Disposable muestreo;
+        private long muestras;
+        private long sumaAdquiridas;
+        private int maxAdquiridas;
+        private int maxPendientes;
+        private int maxSize;
+
+        PoolSampler(ConnectionPool pool) {
+            this.pool = pool;
+            this.muestreo = Flux.interval(Duration.ofMillis(100), Schedulers.newSingle("muestreo-pool", true))
+                    .subscribe(tick -> pool.getMetrics().ifPresent(this::sample));
+        }
+
+        private synchronized void sample(PoolMetrics metrics) {
+            muestras++;
+            sumaAdquiridas += metrics.acquiredSize();
+            maxAdquiridas = Math.max(maxAdquiridas, metrics.acquiredSize());
+            maxPendientes = Math.max(maxPendientes, metrics.pendingAcquireSize());
+            maxSize = metrics.getMaxAllocatedSize();
+        }
+
+        void stop() {
+            muestreo.dispose();
+        }
+
+        synchronized void print() {
+            System.out.printf(Locale.ROOT, "Pool: %d conexiones como máximo, %.1f en uso de media (máx %d), hasta %d esperando%n",
+                    maxSize, muestras == 0 ? 0.0 : (double) sumaAdquiridas / muestras, maxAdquiridas, maxPendientes);
+            pool.getMetrics().ifPresent(metrics -> System.out.printf(Locale.ROOT,
+                    "Pool al terminar: %d creadas, %d libres%n", metrics.allocatedSize(), metrics.idleSize()));
+        }
+    }
+}
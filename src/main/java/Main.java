@@ -1,6 +1,8 @@
 import controllers.FunkoController;
+import enums.OverflowPolicy;
 import exceptions.File.ErrorInFile;
 import exceptions.File.NotFoundFile;
+import models.ImportReport;
 import repositories.funkos.FunkoRepositoryImpl;
 import routes.Routes;
 import services.database.DataBaseManager;
@@ -16,7 +18,7 @@ public class Main {
         FunkoController funkoController = FunkoController.getInstance();
         Routes routes = Routes.getInstance();
 
-        notifications.getNotificationAsFlux().subscribe(
+        notifications.getNotificationAsFlux("consola", 1024, OverflowPolicy.DROP_OLDEST).subscribe(
                 notification -> {
                     switch (notification.getTipo()) {
                         case NEW -> System.out.println("🟢 Funko insertado: " + notification.getContenido());
@@ -28,7 +30,9 @@ public class Main {
                 () -> System.out.println("Obtención de funkos completada")
         );
 
-        funkoController.loadCsv();
+        // Las consultas de después necesitan los funkos ya importados
+        ImportReport report = funkoController.loadCsv().block();
+        System.out.println("Importación terminada: " + report);
 
         funkoController.expensiveFunko().subscribe(
                 funko -> System.out.println("Funko más caro: " + funko),
@@ -84,7 +88,9 @@ public class Main {
                 () -> System.out.println("Obtención de funkos completada")
         );
 
-        funkoController.exportJson(routes.getRouteFunkosJson());
+        // Antes de salir, para no dejar el JSON a medias
+        funkoController.exportJson(routes.getRouteFunkosJson()).block();
+        System.out.println("Estadísticas de la caché: " + funkosService.getCacheStats());
         System.exit(0);
     }
 }
\ No newline at end of file
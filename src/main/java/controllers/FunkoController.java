@@ -4,6 +4,7 @@ import enums.Modelo;
 import lombok.Getter;
 import models.Funko;
 import models.IdGenerator;
+import models.ImportReport;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import repositories.funkos.FunkoRepositoryImpl;
@@ -37,12 +38,12 @@ public class FunkoController {
         return instance;
     }
 
-    public void loadCsv() {
-        funkosService.importFromCsv();
+    public Mono<ImportReport> loadCsv() {
+        return funkosService.importFromCsv();
     }
 
-    public void exportJson(String ruta) {
-        funkosService.exportToJson(ruta);
+    public Mono<Void> exportJson(String ruta) {
+        return funkosService.exportToJson(ruta);
     }
 
     public Mono<Funko> expensiveFunko() {
@@ -0,0 +1,5 @@
+package enums;
+
+public enum OverflowPolicy {
+    DROP_OLDEST, LATEST, ERROR, UNBOUNDED
+}
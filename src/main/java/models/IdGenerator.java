@@ -1,20 +1,128 @@
 package models;
 
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import services.database.DataBaseManager;
+
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
 
+/**
+ * Generador de id2 con reserva por bloques (hi/lo) en la tabla ID2_ALLOCATOR, sin bloquear ningún hilo.
+ * <p>
+ * {@link #assign} numera un flujo de funkos: reserva un rango por cada blockSize funkos y se los asigna en el orden del
+ * flujo, así que quedan consecutivos aunque otros flujos estén reservando a la vez. {@link #next()} reparte ids sueltos
+ * sin locks: cada hilo que los pide tiene su propio bloque reservado (una franja según su id de hilo) y solo vuelve a la
+ * base de datos cuando lo agota.
+ * <p>
+ * La reserva es una única sentencia UPDATE sobre el contador, así que dos generadores (en este proceso, después de un
+ * reinicio o en otra JVM con la misma base de datos) nunca reciben el mismo rango. Los ids que no se llegan a usar se
+ * pierden, por lo que puede haber huecos.
+ */
 public class IdGenerator {
+    private static final String RESERVE = "SELECT siguiente FROM FINAL TABLE " +
+            "(UPDATE ID2_ALLOCATOR SET siguiente = siguiente + ? WHERE nombre = 'FUNKOS')";
     private static IdGenerator instance;
+    private final Logger logger = LoggerFactory.getLogger(IdGenerator.class);
+    private final ConnectionFactory connectionFactory;
+    private final int blockSize;
+    // Bloques de next(), uno por franja; los hilos que caen en franjas distintas no comparten nada
+    private final AtomicReferenceArray<Bloque> bloques;
+
+    IdGenerator(ConnectionFactory connectionFactory, int blockSize) {
+        this(connectionFactory, blockSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    IdGenerator(ConnectionFactory connectionFactory, int blockSize, int franjas) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque de ids debe ser positivo: " + blockSize);
+        }
+        this.connectionFactory = connectionFactory;
+        this.blockSize = blockSize;
+        this.bloques = new AtomicReferenceArray<>(franjas);
+        for (int i = 0; i < franjas; i++) {
+            // Cada franja empieza con su propio bloque vacío, para no compartir la reserva del sustituto
+            bloques.set(i, new Bloque(0, 0));
+        }
+    }
+
+    // Ids [primero, fin) que reparte una franja y, cuando se agotan, la reserva que lo sustituye
+    private static final class Bloque {
+        final AtomicLong siguiente;
+        final long fin;
+        final AtomicReference<Mono<Bloque>> sustituto = new AtomicReference<>();
 
-    private final AtomicLong myId = new AtomicLong(1);
+        Bloque(long primero, long fin) {
+            this.siguiente = new AtomicLong(primero);
+            this.fin = fin;
+        }
+    }
 
     public synchronized static IdGenerator getInstance() {
         if (instance == null) {
-            instance = new IdGenerator();
+            DataBaseManager db = DataBaseManager.getInstance();
+            instance = new IdGenerator(db.getConnectionFactory(), db.getIdBlockSize());
         }
         return instance;
     }
 
-    public Long getAndIncrement() {
-        return myId.getAndIncrement();
+    /**
+     * Un id2 libre del bloque de la franja del hilo que lo pide. Cuando se agota, el primero que lo nota reserva el
+     * siguiente y los demás de esa franja esperan a esa misma reserva.
+     */
+    public Mono<Long> next() {
+        return Mono.defer(() -> {
+            int franja = (int) Math.floorMod(Thread.currentThread().getId(), (long) bloques.length());
+            Bloque actual = bloques.get(franja);
+            long id = actual.siguiente.getAndIncrement();
+            if (id < actual.fin) {
+                return Mono.just(id);
+            }
+            Mono<Bloque> reserva = actual.sustituto.get();
+            if (reserva == null) {
+                Mono<Bloque> nueva = reserve(blockSize)
+                        .map(primero -> new Bloque(primero, primero + blockSize))
+                        .doOnNext(bloque -> bloques.compareAndSet(franja, actual, bloque))
+                        // Guarda el bloque pero no los errores: quien llegue después vuelve a intentar la reserva
+                        .cacheInvalidateIf(bloque -> false);
+                reserva = actual.sustituto.compareAndSet(null, nueva) ? nueva : actual.sustituto.get();
+            }
+            // Con el bloque nuevo se vuelve a intentar; si otros lo han agotado antes, se reserva otro
+            return reserva.then(next());
+        });
+    }
+
+    /**
+     * Los funkos del flujo con su id2, en el mismo orden. Cada tramo de blockSize funkos recibe ids consecutivos.
+     */
+    public Flux<Funko> assign(Flux<Funko.FunkoBuilder> funkos) {
+        return funkos.buffer(blockSize)
+                .concatMap(lote -> reserve(lote.size()).flatMapIterable(primero -> number(lote, primero)), 1);
+    }
+
+    /**
+     * Reserva n ids consecutivos y devuelve el primero.
+     */
+    public Mono<Long> reserve(int n) {
+        // Conexión propia y no del pool: quien pide ids puede estar ocupando las del pool con un saveAll
+        return Mono.usingWhen(
+                        connectionFactory.create(),
+                        connection -> Mono.from(connection.createStatement(RESERVE).bind(0, n).execute())
+                                .flatMap(result -> Mono.from(result.map((fila, datos) -> fila.get(0, Long.class)))),
+                        Connection::close)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("No existe el contador de id2 en ID2_ALLOCATOR")))
+                .map(siguienteLibre -> siguienteLibre - n)
+                .doOnNext(primero -> logger.debug("Reservados los id2 del " + primero + " al " + (primero + n - 1)));
+    }
+
+    private static List<Funko> number(List<Funko.FunkoBuilder> lote, long primero) {
+        return IntStream.range(0, lote.size()).mapToObj(i -> lote.get(i).id2(primero + i).build()).toList();
     }
-}
\ No newline at end of file
+}
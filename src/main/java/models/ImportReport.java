@@ -0,0 +1,22 @@
+package models;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Resultado de una importación: filas leídas del fichero, guardadas y fallidas (con los primeros errores),
+ * duración y ritmo de inserción.
+ */
+public record ImportReport(long leidos, long importados, long fallidos, List<String> errores, Duration duracion) {
+
+    public double filasPorSegundo() {
+        double segundos = duracion.toNanos() / 1_000_000_000.0;
+        return segundos == 0 ? 0 : importados / segundos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Importados %d de %d funkos (%d fallidos) en %.3f s (%.0f filas/s)",
+                importados, leidos, fallidos, duracion.toNanos() / 1_000_000_000.0, filasPorSegundo());
+    }
+}
@@ -0,0 +1,79 @@
+package repositories.funkos;
+
+import models.Funko;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Agrupa las búsquedas por ID que llegan en una ventana corta (o hasta un máximo) en una única consulta
+ * WHERE id2 IN (...) y reparte cada resultado al Mono que lo pidió.
+ */
+public class FunkoBatchLoader {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(2);
+    // Lotes que pueden estar consultándose a la vez
+    private static final int CONCURRENCY = 4;
+    private final Logger logger = LoggerFactory.getLogger(FunkoBatchLoader.class);
+    private final FunkoRepository repository;
+    private final Sinks.Many<Peticion> peticiones = Sinks.many().unicast().onBackpressureBuffer();
+
+    public FunkoBatchLoader(FunkoRepository repository) {
+        this(repository, DEFAULT_MAX_BATCH_SIZE, DEFAULT_WINDOW);
+    }
+
+    public FunkoBatchLoader(FunkoRepository repository, int maxBatchSize, Duration window) {
+        this.repository = repository;
+        // Con backpressure justo las peticiones esperan en el buffer mientras los CONCURRENCY lotes estén ocupados,
+        // en vez de fallar con OverflowException y dejar sin respuesta a los que esperan
+        peticiones.asFlux()
+                .bufferTimeout(maxBatchSize, window, true)
+                .flatMap(this::resolver, CONCURRENCY)
+                .subscribe(lote -> {
+                }, e -> logger.error("El agrupador de búsquedas por ID se ha detenido: " + e.getMessage()));
+    }
+
+    private record Peticion(long id, Sinks.One<Funko> resultado) {
+    }
+
+    /**
+     * Devuelve el funko con ese ID, o vacío si no existe, cuando se resuelva el lote en el que entre.
+     */
+    public Mono<Funko> load(Long id) {
+        return Mono.defer(() -> {
+            Sinks.One<Funko> resultado = Sinks.one();
+            // Pueden llegar peticiones desde varios hilos a la vez: se reintenta hasta poder emitir
+            peticiones.emitNext(new Peticion(id, resultado), Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+            return resultado.asMono();
+        });
+    }
+
+    private Mono<Void> resolver(List<Peticion> lote) {
+        List<Long> ids = lote.stream().map(Peticion::id).distinct().toList();
+        logger.debug("Resolviendo lote de " + lote.size() + " búsquedas por ID (" + ids.size() + " distintas)");
+        // Si solo hay un ID basta con la consulta por clave. Con defer, si el repositorio lanza una excepción al
+        // crear la consulta solo falla este lote y no el flujo de lotes, que dejaría sin atender las siguientes
+        Mono<Map<Long, Funko>> encontrados = Mono.defer(() -> ids.size() == 1
+                ? repository.findById(ids.get(0)).map(funko -> Map.of(funko.getId2(), funko)).defaultIfEmpty(Map.of())
+                : repository.findAllById(ids).collect(Collectors.toMap(Funko::getId2, Function.identity())));
+        return encontrados
+                .doOnNext(funkos -> lote.forEach(peticion -> {
+                    Funko funko = funkos.get(peticion.id());
+                    if (funko == null) {
+                        peticion.resultado().tryEmitEmpty();
+                    } else {
+                        peticion.resultado().tryEmitValue(funko);
+                    }
+                }))
+                .doOnError(e -> lote.forEach(peticion -> peticion.resultado().tryEmitError(e)))
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+}
@@ -1,29 +1,69 @@
 package repositories.funkos;
 
+import enums.Modelo;
 import models.Funko;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import repositories.crud.CrudRepository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
 public interface FunkoRepository extends CrudRepository<Funko, Long> {
     // Buscar por nombre
     Mono<Funko> save(Funko funko);
 
-    // Actualizar
+    // Guardar en lotes
+    Flux<Funko> saveAll(Flux<Funko> funkos);
+
+    // Guardar en lotes
+    Flux<Funko> saveAll(Collection<Funko> funkos);
+
+    // Guardar lotes ya formados con una sola conexión; los que fallan se pasan a onBatchError y se sigue
+    Flux<Funko> saveBatches(Flux<List<Funko>> batches, BiConsumer<List<Funko>, Throwable> onBatchError);
+
+    // Actualizar; vacío si no existe
     Mono<Funko> update(Funko funko);
 
     // Buscar por ID
     Mono<Funko> findById(Long id);
 
+    // Buscar varios por ID en una sola consulta
+    Flux<Funko> findAllById(Collection<Long> ids);
+
     // Buscar por nombre
     Flux<Funko> findByNombre(String nombre);
 
     // Buscar todos
     Flux<Funko> findAll();
 
-    // Borrar por ID
+    // Una página de como mucho pageSize funkos con id2 mayor que afterId2 (null para la primera), ordenados por id2
+    Flux<Funko> findAll(Long afterId2, int pageSize);
+
+    // Funko más caro
+    Mono<Funko> findMostExpensive();
+
+    // Precio medio
+    Mono<Double> averagePrecio();
+
+    // Número de funkos por modelo
+    Mono<Map<Modelo, Long>> countByModelo();
+
+    // Lanzados entre desde (incluida) y hasta (excluida)
+    Flux<Funko> findByFechaLanzamientoBetween(LocalDate desde, LocalDate hasta);
+
+    // Número de funkos cuyo nombre contiene el texto
+    Mono<Long> countByNombre(String nombre);
+
+    // Borrar por ID; false si no existe
     Mono<Boolean> deleteById(Long id);
 
+    // Borrar por ID devolviendo el funko borrado; vacío si no existe
+    Mono<Funko> deleteByIdReturning(Long id);
+
     // Borrar todos
     Mono<Void> deleteAll();
 }
@@ -4,6 +4,7 @@ import enums.Modelo;
 import io.r2dbc.pool.ConnectionPool;
 import io.r2dbc.spi.Connection;
 import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
 import models.Funko;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,16 +15,41 @@ import services.funkos.FunkoStorageImpl;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class FunkoRepositoryImpl implements FunkoRepository {
+    // Sentencias SQL del repositorio; públicas para comprobar sus planes (EXPLAIN) en los tests
+    public static final String INSERT = "INSERT INTO FUNKOS (cod, id2, nombre, modelo, precio, fechaLanzamiento) VALUES (?, ?, ?, ?, ?, ?)";
+    public static final String UPDATE = "UPDATE FUNKOS SET nombre = ?, modelo = ?, precio = ?, fechaLanzamiento = ? WHERE id2 = ?";
+    public static final String FIND_BY_ID = "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS WHERE id2 = ?";
+    public static final String FIND_PAGE = "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS WHERE id2 > ? ORDER BY id2 LIMIT ?";
+    public static final String FIND_MOST_EXPENSIVE = "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS ORDER BY precio DESC, id2 DESC LIMIT 1";
+    public static final String AVERAGE_PRECIO = "SELECT COALESCE(AVG(CAST(precio AS DOUBLE PRECISION)), 0) FROM FUNKOS";
+    public static final String COUNT_BY_MODELO = "SELECT modelo, COUNT(*) FROM FUNKOS GROUP BY modelo";
+    public static final String FIND_BY_FECHA_LANZAMIENTO = "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS WHERE fechaLanzamiento >= ? AND fechaLanzamiento < ?";
+    public static final String COUNT_BY_NOMBRE = "SELECT COUNT(*) FROM FUNKOS WHERE nombre LIKE ?";
+    public static final String DELETE_BY_ID = "DELETE FROM FUNKOS WHERE id2 = ?";
+    // El mismo DELETE, para que comparta su plan (H2 no lo muestra dentro de OLD TABLE)
+    public static final String DELETE_BY_ID_RETURNING = "SELECT " + FunkoRowMapper.COLUMNS + " FROM OLD TABLE (" + DELETE_BY_ID + ")";
+    public static final String DELETE_ALL = "DELETE FROM FUNKOS";
+    public static final String FIND_BY_NOMBRE = "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS WHERE nombre LIKE ?";
+
     private static FunkoRepositoryImpl instance;
     private final Logger logger = LoggerFactory.getLogger(FunkoRepositoryImpl.class);
     private final ConnectionPool connectionFactory;
+    private final int batchSize;
+    private final int pageSize;
     private final FunkoStorageImpl funkoStorage = FunkoStorageImpl.getInstance();
 
     private FunkoRepositoryImpl(DataBaseManager db) {
         this.connectionFactory = db.getConnectionPool();
+        this.batchSize = db.getBatchSize();
+        this.pageSize = db.getPageSize();
     }
 
     public static synchronized FunkoRepositoryImpl getInstance(DataBaseManager db) {
@@ -36,11 +62,9 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     @Override
     public Mono<Funko> save(Funko funko) {
         logger.debug("Insertando funko: " + funko);
-        String query = "INSERT INTO FUNKOS (cod, id2, nombre, modelo, precio, fechaLanzamiento) VALUES (?, ?, ?, ?, ?, ?)";
-
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Mono.from(connection.createStatement(INSERT)
                         .bind(0, funko.getCod().toString())
                         .bind(1, funko.getId2())
                         .bind(2, funko.getNombre())
@@ -53,21 +77,79 @@ public class FunkoRepositoryImpl implements FunkoRepository {
         );
     }
 
+    @Override
+    public Flux<Funko> saveAll(Flux<Funko> funkos) {
+        return funkos.buffer(batchSize).concatMap(this::saveBatch);
+    }
+
+    @Override
+    public Flux<Funko> saveAll(Collection<Funko> funkos) {
+        return saveAll(Flux.fromIterable(funkos));
+    }
+
+    @Override
+    public Flux<Funko> saveBatches(Flux<List<Funko>> batches, BiConsumer<List<Funko>, Throwable> onBatchError) {
+        // La conexión se pide al suscribirse y se mantiene hasta el último lote, cada uno en su transacción
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> batches.concatMap(batch -> insertBatch(connection, batch)
+                        .onErrorResume(e -> {
+                            onBatchError.accept(batch, e);
+                            return Flux.empty();
+                        }), 1),
+                Connection::close
+        );
+    }
+
+    private Flux<Funko> saveBatch(List<Funko> batch) {
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> insertBatch(connection, batch),
+                Connection::close
+        );
+    }
+
+    // Un único statement con un binding por fila, dentro de una transacción
+    private Flux<Funko> insertBatch(Connection connection, List<Funko> batch) {
+        logger.debug("Insertando lote de " + batch.size() + " funkos");
+        Statement statement = connection.createStatement(INSERT);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            Funko funko = batch.get(i);
+            statement.bind(0, funko.getCod().toString())
+                    .bind(1, funko.getId2())
+                    .bind(2, funko.getNombre())
+                    .bind(3, funko.getModelo().toString())
+                    .bind(4, funko.getPrecio())
+                    .bind(5, funko.getFechaLanzamiento());
+        }
+        return Mono.from(connection.beginTransaction())
+                .thenMany(statement.execute())
+                .concatMap(Result::getRowsUpdated)
+                .then(Mono.defer(() -> Mono.from(connection.commitTransaction())))
+                .onErrorResume(e -> Mono.from(connection.rollbackTransaction()).then(Mono.error(e)))
+                .thenMany(Flux.fromIterable(batch));
+    }
+
     @Override
     public Mono<Funko> update(Funko funko) {
         logger.debug("Actualizando funko: " + funko);
-        String query = "UPDATE FUNKOS SET nombre = ?, modelo = ?, precio = ?, fechaLanzamiento = ? WHERE id2 = ?";
         funko.setUpdatedAt(LocalDateTime.now());
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Mono.from(connection.createStatement(UPDATE)
                         .bind(0, funko.getNombre())
                         .bind(1, funko.getModelo().toString())
                         .bind(2, funko.getPrecio())
                         .bind(3, funko.getFechaLanzamiento())
                         .bind(4, funko.getId2())
                         .execute()
-                ).then(Mono.just(funko)),
+                ).flatMap(result -> Mono.from(result.getRowsUpdated()))
+                        // Comprobación de existencia y actualización en la misma sentencia
+                        .filter(filas -> filas > 0)
+                        .map(filas -> funko),
                 Connection::close
         );
 
@@ -76,22 +158,41 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     @Override
     public Mono<Funko> findById(Long id) {
         logger.debug("Buscando funko por ID: " + id);
-        String query = "SELECT * FROM FUNKOS WHERE id2 = ?";
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Mono.from(connection.createStatement(FIND_BY_ID)
                         .bind(0, id)
                         .execute()
-                ).flatMap(result -> Mono.from(result.map((fila, datos) ->
-                        Funko.builder()
-                                .id2(fila.get("id2", Long.class))
-                                .cod(UUID.fromString(fila.get("cod", String.class)))
-                                .nombre(fila.get("nombre", String.class))
-                                .modelo(Modelo.valueOf(fila.get("modelo", String.class)))
-                                .precio(fila.get("precio", Float.class).doubleValue())
-                                .fechaLanzamiento(fila.get("fechaLanzamiento", java.time.LocalDate.class))
-                                .build()
-                ))),
+                ).flatMap(result -> Mono.from(result.map(FunkoRowMapper::map))),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Flux<Funko> findAllById(Collection<Long> ids) {
+        logger.debug("Buscando " + ids.size() + " funkos por ID");
+        // Lista IN de como mucho batchSize parámetros por consulta
+        return Flux.fromIterable(ids).distinct().buffer(batchSize).concatMap(this::findBatchById);
+    }
+
+    /**
+     * Búsqueda por una lista IN de n id2.
+     */
+    public static String findAllByIdQuery(int n) {
+        return "SELECT " + FunkoRowMapper.COLUMNS + " FROM FUNKOS WHERE id2 IN (" + String.join(", ", Collections.nCopies(n, "?")) + ")";
+    }
+
+    private Flux<Funko> findBatchById(List<Long> ids) {
+        String query = findAllByIdQuery(ids.size());
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> {
+                    Statement statement = connection.createStatement(query);
+                    for (int i = 0; i < ids.size(); i++) {
+                        statement.bind(i, ids.get(i));
+                    }
+                    return Flux.from(statement.execute()).flatMap(result -> result.map(FunkoRowMapper::map));
+                },
                 Connection::close
         );
     }
@@ -99,21 +200,104 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     @Override
     public Flux<Funko> findAll() {
         logger.debug("Buscando todos los funkos");
-        String query = "SELECT * FROM FUNKOS";
+        return findAllPaged(pageSize);
+    }
+
+    /**
+     * Recorre la tabla por páginas de pageSize funkos en orden de id2. Cada página es una consulta con su propia
+     * conexión, que vuelve al pool en cuanto se ha leído la página, así que un consumidor lento no retiene ninguna.
+     * A cambio se leen como mucho dos páginas por delante de la que se está consumiendo.
+     */
+    public Flux<Funko> findAllPaged(int pageSize) {
+        return findPage(null, pageSize)
+                .expand(page -> page.size() < pageSize ? Mono.empty() : findPage(page.get(page.size() - 1).getId2(), pageSize))
+                .concatMapIterable(page -> page, 1)
+                .limitRate(pageSize);
+    }
+
+    // expand se suscribe a la página siguiente sin esperar a que se pida, y usingWhen coge la conexión al
+    // suscribirse: share lee la página entera en ese momento para no dejar la conexión esperando al consumidor
+    private Mono<List<Funko>> findPage(Long afterId2, int pageSize) {
+        return Mono.defer(() -> findAll(afterId2, pageSize).collectList()).share();
+    }
+
+    @Override
+    public Flux<Funko> findAll(Long afterId2, int pageSize) {
+        logger.debug("Buscando página de " + pageSize + " funkos después del id2 " + afterId2);
         return Flux.usingWhen(
                 connectionFactory.create(),
-                connection -> Flux.from(connection.createStatement(query)
+                connection -> Flux.from(connection.createStatement(FIND_PAGE)
+                        .bind(0, afterId2 == null ? Long.MIN_VALUE : afterId2)
+                        .bind(1, pageSize)
+                        .execute()
+                ).flatMap(result -> result.map(FunkoRowMapper::map)),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Mono<Funko> findMostExpensive() {
+        logger.debug("Buscando el funko más caro");
+        // Con empates, el de mayor id2: el mismo criterio que FunkoStatistics y el del índice IDX_FUNKOS_PRECIO_ID2
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(FIND_MOST_EXPENSIVE)
+                        .execute()
+                ).flatMap(result -> Mono.from(result.map(FunkoRowMapper::map))),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Mono<Double> averagePrecio() {
+        logger.debug("Calculando el precio medio");
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(AVERAGE_PRECIO)
+                        .execute()
+                ).flatMap(result -> Mono.from(result.map((fila, datos) -> fila.get(0, Number.class).doubleValue()))),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Mono<Map<Modelo, Long>> countByModelo() {
+        logger.debug("Contando funkos por modelo");
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Flux.from(connection.createStatement(COUNT_BY_MODELO)
                         .execute()
                 ).flatMap(result -> result.map((fila, datos) ->
-                        Funko.builder()
-                                .id2(fila.get("id2", Long.class))
-                                .cod(UUID.fromString(fila.get("cod", String.class)))
-                                .nombre(fila.get("nombre", String.class))
-                                .modelo(Modelo.valueOf(fila.get("modelo", String.class)))
-                                .precio(fila.get("precio", Float.class).doubleValue())
-                                .fechaLanzamiento(fila.get("fechaLanzamiento", LocalDate.class))
-                                .build()
-                )),
+                        Map.entry(FunkoRowMapper.modelo(fila.get(0, String.class)), fila.get(1, Long.class))
+                )).collectMap(Map.Entry::getKey, Map.Entry::getValue, () -> new EnumMap<>(Modelo.class)),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Flux<Funko> findByFechaLanzamientoBetween(LocalDate desde, LocalDate hasta) {
+        logger.debug("Buscando funkos lanzados entre " + desde + " y " + hasta);
+        // Rango sobre la columna tal cual para que pueda usarse un índice
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> Flux.from(connection.createStatement(FIND_BY_FECHA_LANZAMIENTO)
+                        .bind(0, desde)
+                        .bind(1, hasta)
+                        .execute()
+                ).flatMap(result -> result.map(FunkoRowMapper::map)),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Mono<Long> countByNombre(String nombre) {
+        logger.debug("Contando funkos por nombre: " + nombre);
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(COUNT_BY_NOMBRE)
+                        .bind(0, "%" + nombre + "%")
+                        .execute()
+                ).flatMap(result -> Mono.from(result.map((fila, datos) -> fila.get(0, Long.class)))),
                 Connection::close
         );
     }
@@ -121,26 +305,38 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     @Override
     public Mono<Boolean> deleteById(Long idDelete) {
         logger.debug("Borrando funko por ID: " + idDelete);
-        String query = "DELETE FROM FUNKOS WHERE id2 = ?";
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Mono.from(connection.createStatement(DELETE_BY_ID)
                                 .bind(0, idDelete)
                                 .execute()
-                        ).flatMapMany(Result::getRowsUpdated)
-                        .hasElements(),
+                        ).flatMap(result -> Mono.from(result.getRowsUpdated()))
+                        .map(filas -> filas > 0),
                 Connection::close
         );
 
     }
 
+    @Override
+    public Mono<Funko> deleteByIdReturning(Long idDelete) {
+        logger.debug("Borrando y devolviendo funko por ID: " + idDelete);
+        // OLD TABLE devuelve las filas tal y como estaban antes de borrarlas, en la misma sentencia
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(DELETE_BY_ID_RETURNING)
+                        .bind(0, idDelete)
+                        .execute()
+                ).flatMap(result -> Mono.from(result.map(FunkoRowMapper::map))),
+                Connection::close
+        );
+    }
+
     @Override
     public Mono<Void> deleteAll() {
         logger.debug("Borrando todos los funkos");
-        String query = "DELETE FROM FUNKOS";
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Mono.from(connection.createStatement(DELETE_ALL)
                         .execute()
                 ).then(),
                 Connection::close
@@ -150,22 +346,12 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     @Override
     public Flux<Funko> findByNombre(String nombre) {
         logger.debug("Buscando funko por nombre: " + nombre);
-        String query = "SELECT * FROM FUNKOS WHERE nombre LIKE ?";
         return Flux.usingWhen(
                 connectionFactory.create(),
-                connection -> Flux.from(connection.createStatement(query)
+                connection -> Flux.from(connection.createStatement(FIND_BY_NOMBRE)
                         .bind(0, "%" + nombre + "%")
                         .execute()
-                ).flatMap(result -> result.map((fila, datos) ->
-                        Funko.builder()
-                                .id2(fila.get("id2", Long.class))
-                                .cod(UUID.fromString(fila.get("cod", String.class)))
-                                .nombre(fila.get("nombre", String.class))
-                                .modelo(Modelo.valueOf(fila.get("modelo", String.class)))
-                                .precio(fila.get("precio", Float.class).doubleValue())
-                                .fechaLanzamiento(fila.get("fechaLanzamiento", java.time.LocalDate.class))
-                                .build()
-                )),
+                ).flatMap(result -> result.map(FunkoRowMapper::map)),
                 Connection::close
         );
     }
@@ -173,4 +359,8 @@ public class FunkoRepositoryImpl implements FunkoRepository {
     public Mono<Void> exportJson(String ruta) {
         return funkoStorage.exportJson(ruta);
     }
+
+    public Mono<Void> exportJson(String ruta, boolean pretty, boolean gzip) {
+        return funkoStorage.exportJson(ruta, findAll(), pretty, gzip);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package repositories.funkos;
+
+import enums.Modelo;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import models.Funko;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Convierte las filas de las consultas de funkos leyendo las columnas por posición. Las consultas deben seleccionar
+ * exactamente {@link #COLUMNS}, en ese orden. UUID.fromString ya tiene un camino rápido para el formato canónico
+ * de 36 caracteres de la columna COD, así que se usa tal cual.
+ */
+final class FunkoRowMapper {
+    static final String COLUMNS = "id2, cod, nombre, modelo, precio, fechaLanzamiento";
+    private static final Map<String, Modelo> MODELOS = new HashMap<>();
+
+    static {
+        for (Modelo modelo : Modelo.values()) {
+            MODELOS.put(modelo.name(), modelo);
+        }
+    }
+
+    private FunkoRowMapper() {
+    }
+
+    static Funko map(Row fila, RowMetadata datos) {
+        return Funko.builder()
+                .id2(fila.get(0, Long.class))
+                .cod(UUID.fromString(fila.get(1, String.class)))
+                .nombre(fila.get(2, String.class))
+                .modelo(modelo(fila.get(3, String.class)))
+                .precio(fila.get(4, Float.class).doubleValue())
+                .fechaLanzamiento(fila.get(5, LocalDate.class))
+                .build();
+    }
+
+    static Modelo modelo(String nombre) {
+        Modelo modelo = MODELOS.get(nombre);
+        return modelo != null ? modelo : Modelo.valueOf(nombre);
+    }
+}
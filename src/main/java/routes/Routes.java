@@ -11,7 +11,7 @@ public class Routes {
     private final String routeFunkosJson = "src" + File.separator + "data" + File.separator + "funkos.json";
     private final String routeDirResources = "src" + File.separator + "main" + File.separator + "resources" + File.separator;
     private final String removeSqlFile = "src" + File.separator + "main" + File.separator + "resources" + File.separator + "delete.sql";
-    private final String createSqlFile = "src" + File.separator + "main" + File.separator + "resources" + File.separator + "init.sql";
+    private final String migrationsDir = "src" + File.separator + "main" + File.separator + "resources" + File.separator + "migrations";
 
     public static synchronized Routes getInstance() {
         if (instance == null) {
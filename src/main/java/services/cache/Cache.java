@@ -1,16 +1,27 @@
 package services.cache;
 
-import models.Funko;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.function.Function;
+
 public interface Cache<K, V> {
     Mono<Void> put(K key, V value);
 
-    Mono<Funko> get(K key);
+    Mono<V> get(K key);
+
+    // Obtener de la caché o, si no está, cargar con loader y guardar el resultado
+    Mono<V> get(K key, Function<K, Mono<V>> loader);
 
     Mono<Void> remove(K key);
 
     void clear();
 
     void shutdown();
+
+    CacheStats stats();
+
+    // Emite las estadísticas cada cierto tiempo, para exportarlas o mostrarlas
+    Flux<CacheStats> statsEvery(Duration period);
 }
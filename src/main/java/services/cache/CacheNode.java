@@ -0,0 +1,27 @@
+package services.cache;
+
+/**
+ * Entrada de la caché. Valor y marcas de tiempo son volátiles porque se leen sin lock; los enlaces del
+ * anillo de expulsión y de la rueda de tiempos solo se tocan con el lock de escritura.
+ */
+final class CacheNode<K, V> {
+    final K key;
+    volatile V value;
+    volatile boolean referenced;
+    volatile long writeTime;
+    volatile long accessTime;
+
+    // Anillo del reloj (expulsión por tamaño)
+    CacheNode<K, V> prev;
+    CacheNode<K, V> next;
+
+    // Cubeta de la rueda de tiempos (expiración)
+    CacheNode<K, V> prevInWheel;
+    CacheNode<K, V> nextInWheel;
+    long scheduledTime;
+
+    CacheNode(K key, V value) {
+        this.key = key;
+        this.value = value;
+    }
+}
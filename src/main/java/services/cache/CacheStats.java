@@ -0,0 +1,45 @@
+package services.cache;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Foto inmutable de las estadísticas de una caché. Los tiempos están en nanosegundos.
+ */
+@Getter
+@Builder
+@ToString
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long loadLatencyP50;
+    private final long loadLatencyP99;
+    private final long loadLatencyP999;
+    private final long loadLatencyMax;
+    private final int size;
+    private final int maxSize;
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long loadCount() {
+        return loadSuccessCount + loadFailureCount;
+    }
+
+    public double averageLoadPenalty() {
+        long loads = loadCount();
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+}
@@ -0,0 +1,73 @@
+package services.cache;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de la caché. Los LongAdder reparten las escrituras entre celdas por hilo y el Recorder de
+ * HdrHistogram registra latencias sin esperas, así que medir no añade contención a las operaciones.
+ */
+final class CacheStatsCounter {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final Recorder loadLatencyRecorder = new Recorder(3);
+    private final Histogram loadLatency = new Histogram(3);
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordLoadSuccess(long nanos) {
+        loadSuccessCount.increment();
+        recordLoadTime(nanos);
+    }
+
+    void recordLoadFailure(long nanos) {
+        loadFailureCount.increment();
+        recordLoadTime(nanos);
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    void recordExpiration() {
+        expirationCount.increment();
+    }
+
+    private void recordLoadTime(long nanos) {
+        totalLoadTime.add(nanos);
+        loadLatencyRecorder.recordValue(Math.max(0, nanos));
+    }
+
+    synchronized CacheStats snapshot(int size, int maxSize) {
+        // Acumulamos lo registrado desde la última foto en el histograma total
+        loadLatency.add(loadLatencyRecorder.getIntervalHistogram());
+        return CacheStats.builder()
+                .hitCount(hitCount.sum())
+                .missCount(missCount.sum())
+                .loadSuccessCount(loadSuccessCount.sum())
+                .loadFailureCount(loadFailureCount.sum())
+                .totalLoadTime(totalLoadTime.sum())
+                .evictionCount(evictionCount.sum())
+                .expirationCount(expirationCount.sum())
+                .loadLatencyP50(loadLatency.getValueAtPercentile(50))
+                .loadLatencyP99(loadLatency.getValueAtPercentile(99))
+                .loadLatencyP999(loadLatency.getValueAtPercentile(99.9))
+                .loadLatencyMax(loadLatency.getMaxValue())
+                .size(size)
+                .maxSize(maxSize)
+                .build();
+    }
+}
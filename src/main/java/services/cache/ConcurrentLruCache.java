@@ -0,0 +1,394 @@
+package services.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché concurrente con capacidad máxima y expulsión LRU aproximada (algoritmo del reloj o "segunda oportunidad").
+ * Las lecturas no usan locks: consultan un ConcurrentHashMap y marcan la entrada como referenciada. Las escrituras
+ * se serializan con un lock que protege el anillo del reloj, de forma que la política nunca se corrompe.
+ * <p>
+ * Opcionalmente las entradas caducan un tiempo después de escribirse y/o de su último acceso, medido con
+ * System.nanoTime desde que entran en la caché. Los plazos se gestionan con una {@link TimerWheel} que se avanza
+ * poco a poco durante las operaciones normales, así que expirar no cuesta más cuanto más grande es la caché.
+ */
+public class ConcurrentLruCache<K, V> implements Cache<K, V> {
+    // Una de cada tantas lecturas intenta hacer el mantenimiento pendiente
+    private static final int READ_MAINTENANCE_RATE = 64;
+    // No se reescribe el tiempo de acceso si el anterior es más reciente que esto, para no penalizar claves calientes
+    private static final long ACCESS_TIME_TOLERANCE = Duration.ofSeconds(1).toNanos();
+    private final Logger logger = LoggerFactory.getLogger(ConcurrentLruCache.class);
+    private final int maxSize;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final LongSupplier ticker;
+    private final long origin;
+    private final ConcurrentHashMap<K, CacheNode<K, V>> data;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Centinela del anillo: clock.next es la entrada más antigua y clock.prev la más reciente
+    private final CacheNode<K, V> clock = new CacheNode<>(null, null);
+    private final TimerWheel<K, V> timerWheel;
+    private final CacheStatsCounter statsCounter = new CacheStatsCounter();
+    // Cargas en curso por clave, compartidas entre todos los que fallan a la vez
+    private final ConcurrentHashMap<K, Carga> inFlight = new ConcurrentHashMap<>();
+    private int size;
+
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, null, null);
+    }
+
+    public ConcurrentLruCache(int maxSize, Duration expireAfterWrite, Duration expireAfterAccess) {
+        this(maxSize, expireAfterWrite, expireAfterAccess, System::nanoTime);
+    }
+
+    public ConcurrentLruCache(int maxSize, Duration expireAfterWrite, Duration expireAfterAccess, LongSupplier ticker) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo de la caché debe ser positivo: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.expireAfterWriteNanos = toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = toNanos(expireAfterAccess);
+        this.ticker = ticker;
+        // Trabajamos con tiempos relativos a la creación para que siempre sean positivos
+        this.origin = ticker.getAsLong();
+        this.data = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16) * 4 / 3 + 1);
+        this.timerWheel = expires() ? new TimerWheel<>(0) : null;
+        clock.prev = clock;
+        clock.next = clock;
+    }
+
+    private static long toNanos(Duration duration) {
+        if (duration == null || duration.isZero()) {
+            return 0;
+        }
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("El tiempo de expiración no puede ser negativo: " + duration);
+        }
+        return duration.toNanos();
+    }
+
+    @Override
+    public Mono<Void> put(K key, V value) {
+        logger.debug("Guardando en la cache la clave: {}", key);
+        return Mono.fromRunnable(() -> putNow(key, value));
+    }
+
+    @Override
+    public Mono<V> get(K key) {
+        logger.debug("Obteniendo de la cache la clave: {}", key);
+        return Mono.fromSupplier(() -> getIfPresent(key));
+    }
+
+    @Override
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        return Mono.defer(() -> {
+            V value = getIfPresent(key);
+            if (value != null) {
+                return Mono.just(value);
+            }
+            // Las peticiones concurrentes de una misma clave comparten una única carga
+            return inFlight.computeIfAbsent(key, k -> new Carga()).start(key, loader);
+        });
+    }
+
+    /**
+     * Carga compartida de una clave. Si mientras tanto se escribe o se borra la clave, la carga queda obsoleta: los
+     * que la esperan reciben lo que se leyó, pero no se guarda en la caché para no pisar el valor nuevo.
+     */
+    private final class Carga {
+        private Mono<V> mono;
+        // Solo cambia con el lock de escritura, así que comprobarlo y guardar el valor es atómico
+        private boolean obsoleta;
+
+        synchronized Mono<V> start(K key, Function<K, Mono<V>> loader) {
+            if (mono == null) {
+                mono = Mono.defer(() -> {
+                            long start = System.nanoTime();
+                            return loader.apply(key)
+                                    .doOnSuccess(loaded -> {
+                                        long elapsed = System.nanoTime() - start;
+                                        if (loaded == null) {
+                                            statsCounter.recordLoadFailure(elapsed);
+                                        } else {
+                                            statsCounter.recordLoadSuccess(elapsed);
+                                            putLoaded(key, loaded, this);
+                                        }
+                                    })
+                                    .doOnError(e -> statsCounter.recordLoadFailure(System.nanoTime() - start));
+                        })
+                        // Cuando se quita ya está en la caché, así que nadie vuelve a cargar la clave
+                        .doFinally(signal -> inFlight.remove(key, this))
+                        .cache();
+            }
+            return mono;
+        }
+    }
+
+    private void putLoaded(K key, V value, Carga carga) {
+        lock.lock();
+        try {
+            if (!carga.obsoleta) {
+                write(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Se llama con el lock: la próxima petición de la clave hará una carga nueva
+    private void invalidateLoad(K key) {
+        Carga carga = inFlight.remove(key);
+        if (carga != null) {
+            carga.obsoleta = true;
+        }
+    }
+
+    @Override
+    public Mono<Void> remove(K key) {
+        logger.debug("Eliminando de la cache la clave: {}", key);
+        return Mono.fromRunnable(() -> removeNow(key));
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            inFlight.keySet().forEach(this::invalidateLoad);
+            CacheNode<K, V> node = clock.next;
+            while (node != clock) {
+                CacheNode<K, V> next = node.next;
+                removeNode(node);
+                node = next;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        logger.debug("Cerrando cache");
+        clear();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot(size(), maxSize);
+    }
+
+    @Override
+    public Flux<CacheStats> statsEvery(Duration period) {
+        return Flux.interval(period).map(tick -> stats());
+    }
+
+    public V getIfPresent(K key) {
+        CacheNode<K, V> node = data.get(key);
+        if (node == null) {
+            statsCounter.recordMiss();
+            afterRead();
+            return null;
+        }
+        if (expires()) {
+            long now = now();
+            if (isExpired(node, now)) {
+                // Ya no es visible; se libera ahora si el lock está libre o en el siguiente mantenimiento
+                statsCounter.recordMiss();
+                tryMaintenance(now);
+                return null;
+            }
+            if (expireAfterAccessNanos > 0 && now - node.accessTime > ACCESS_TIME_TOLERANCE) {
+                node.accessTime = now;
+            }
+        }
+        // Solo escribimos si hace falta para no invalidar la línea de caché en lecturas calientes
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        statsCounter.recordHit();
+        afterRead();
+        return node.value;
+    }
+
+    public void putNow(K key, V value) {
+        lock.lock();
+        try {
+            invalidateLoad(key);
+            write(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(K key, V value) {
+        long now = now();
+        CacheNode<K, V> node = data.get(key);
+        if (node == null) {
+            node = new CacheNode<>(key, value);
+            data.put(key, node);
+            linkLast(node);
+            size++;
+        } else {
+            node.value = value;
+            node.referenced = true;
+        }
+        node.writeTime = now;
+        node.accessTime = now;
+        if (expires()) {
+            timerWheel.schedule(node, deadline(node));
+            timerWheel.advance(now, this::expire, this::deadline);
+        }
+        evict();
+    }
+
+    public void removeNow(K key) {
+        lock.lock();
+        try {
+            invalidateLoad(key);
+            CacheNode<K, V> node = data.get(key);
+            if (node != null) {
+                removeNode(node);
+            }
+            if (expires()) {
+                timerWheel.advance(now(), this::expire, this::deadline);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Elimina las entradas que cumplen la condición recorriendo la caché con el lock de escritura.
+     */
+    public void removeIf(BiPredicate<K, V> condition) {
+        lock.lock();
+        try {
+            CacheNode<K, V> node = clock.next;
+            while (node != clock) {
+                CacheNode<K, V> next = node.next;
+                if (condition.test(node.key, node.value)) {
+                    removeNode(node);
+                }
+                node = next;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libera las entradas caducadas pendientes sin esperar a la siguiente escritura.
+     */
+    public void cleanUp() {
+        if (!expires()) {
+            return;
+        }
+        lock.lock();
+        try {
+            timerWheel.advance(now(), this::expire, this::deadline);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private boolean expires() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    private long now() {
+        return ticker.getAsLong() - origin;
+    }
+
+    private boolean isExpired(CacheNode<K, V> node, long now) {
+        return deadline(node) - now <= 0;
+    }
+
+    private long deadline(CacheNode<K, V> node) {
+        long deadline = Long.MAX_VALUE;
+        if (expireAfterWriteNanos > 0) {
+            deadline = node.writeTime + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            deadline = Math.min(deadline, node.accessTime + expireAfterAccessNanos);
+        }
+        return deadline;
+    }
+
+    private void afterRead() {
+        if (expires() && ThreadLocalRandom.current().nextInt(READ_MAINTENANCE_RATE) == 0) {
+            tryMaintenance(now());
+        }
+    }
+
+    private void tryMaintenance(long now) {
+        if (lock.tryLock()) {
+            try {
+                timerWheel.advance(now, this::expire, this::deadline);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void expire(CacheNode<K, V> node) {
+        logger.debug("Expirada en la cache la clave: {}", node.key);
+        statsCounter.recordExpiration();
+        removeNode(node);
+    }
+
+    private void evict() {
+        // Cada vuelta sin éxito borra bits de referencia, así que como mucho se dan dos vueltas al anillo
+        while (size > maxSize) {
+            CacheNode<K, V> candidate = clock.next;
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                unlink(candidate);
+                linkLast(candidate);
+            } else {
+                logger.debug("Expulsada de la cache la clave: {}", candidate.key);
+                statsCounter.recordEviction();
+                removeNode(candidate);
+            }
+        }
+    }
+
+    private void removeNode(CacheNode<K, V> node) {
+        data.remove(node.key, node);
+        unlink(node);
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+        size--;
+    }
+
+    private void linkLast(CacheNode<K, V> node) {
+        node.prev = clock.prev;
+        node.next = clock;
+        clock.prev.next = node;
+        clock.prev = node;
+    }
+
+    private void unlink(CacheNode<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
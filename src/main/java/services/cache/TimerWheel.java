@@ -0,0 +1,122 @@
+package services.cache;
+
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Rueda de tiempos jerárquica para expirar entradas en O(1) amortizado. Cada nivel tiene cubetas de una
+ * potencia de dos en nanosegundos (~1s, ~1m, ~1h, ~1,6d y ~6,5d); al avanzar el reloj solo se recorren las
+ * cubetas cuyo tiempo ha pasado y las entradas que aún no han caducado se vuelven a programar en su cubeta.
+ * No es thread-safe: se usa siempre con el lock de escritura de la caché.
+ */
+final class TimerWheel<K, V> {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 30, // 1,07s
+            1L << 36, // 1,14m
+            1L << 42, // 1,22h
+            1L << 47, // 1,63d
+            4L << 47, // 6,5d
+            4L << 47
+    };
+    private static final long[] SHIFT = {30, 36, 42, 47, 49};
+
+    private final CacheNode<K, V>[][] wheel;
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos) {
+        this.nanos = nanos;
+        wheel = new CacheNode[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new CacheNode[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                CacheNode<K, V> sentinel = new CacheNode<>(null, null);
+                sentinel.prevInWheel = sentinel;
+                sentinel.nextInWheel = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Programa (o reprograma) la entrada para el instante indicado.
+     */
+    void schedule(CacheNode<K, V> node, long time) {
+        deschedule(node);
+        node.scheduledTime = time;
+        CacheNode<K, V> sentinel = findBucket(time);
+        node.prevInWheel = sentinel.prevInWheel;
+        node.nextInWheel = sentinel;
+        sentinel.prevInWheel.nextInWheel = node;
+        sentinel.prevInWheel = node;
+    }
+
+    void deschedule(CacheNode<K, V> node) {
+        if (node.nextInWheel != null) {
+            node.prevInWheel.nextInWheel = node.nextInWheel;
+            node.nextInWheel.prevInWheel = node.prevInWheel;
+            node.prevInWheel = null;
+            node.nextInWheel = null;
+        }
+    }
+
+    /**
+     * Avanza el reloj hasta currentTime. Las entradas de las cubetas vencidas cuyo plazo real ya ha pasado se
+     * entregan a expire; el resto (por ejemplo, las que se han leído desde que se programaron) se reprograman.
+     */
+    void advance(long currentTime, Consumer<CacheNode<K, V>> expire, ToLongFunction<CacheNode<K, V>> deadline) {
+        long previousTime = nanos;
+        if (currentTime <= previousTime) {
+            return;
+        }
+        nanos = currentTime;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = currentTime >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(i, previousTicks, delta, expire, deadline);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long delta, Consumer<CacheNode<K, V>> expire,
+                        ToLongFunction<CacheNode<K, V>> deadline) {
+        CacheNode<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            CacheNode<K, V> sentinel = buckets[i & mask];
+            CacheNode<K, V> node = sentinel.nextInWheel;
+            sentinel.prevInWheel = sentinel;
+            sentinel.nextInWheel = sentinel;
+            while (node != sentinel) {
+                CacheNode<K, V> next = node.nextInWheel;
+                node.prevInWheel = null;
+                node.nextInWheel = null;
+                long time = deadline.applyAsLong(node);
+                if (time - nanos > 0) {
+                    schedule(node, time);
+                } else {
+                    expire.accept(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private CacheNode<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+}
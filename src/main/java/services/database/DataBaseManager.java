@@ -6,12 +6,20 @@ import io.r2dbc.spi.*;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import routes.Routes;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static io.r2dbc.spi.ConnectionFactoryOptions.*;
@@ -20,13 +28,23 @@ import static io.r2dbc.spi.ConnectionFactoryOptions.*;
 public class DataBaseManager {
     private static DataBaseManager instance;
     private static boolean initDataBase = false;
+    private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String SCHEMA_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (VERSION INT PRIMARY KEY, " +
+            "DESCRIPCION VARCHAR(255), APPLIEDAT TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
     private final Routes routes = Routes.getInstance();
     private final Logger logger = LoggerFactory.getLogger(DataBaseManager.class);
     private final ConnectionFactory connectionFactory;
     private final ConnectionPool pool;
+    private String dbProtocol;
     private String dbUrl;
     private String dbUser;
     private String dbPassword;
+    private int batchSize;
+    private int pageSize;
+    private int idBlockSize;
+    private int poolSize;
+    private int importConcurrency;
+    private int importRails;
 
 
     private DataBaseManager() {
@@ -34,7 +52,7 @@ public class DataBaseManager {
 
         ConnectionFactoryOptions options = builder()
                 .option(DRIVER, "h2")
-                .option(PROTOCOL, "file")
+                .option(PROTOCOL, dbProtocol)
                 .option(USER, dbUser)
                 .option(PASSWORD, dbPassword)
                 .option(DATABASE, dbUrl)
@@ -45,13 +63,13 @@ public class DataBaseManager {
         ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration
                 .builder(connectionFactory)
                 .maxIdleTime(Duration.ofMillis(1000))
-                .maxSize(20)
+                .maxSize(poolSize)
                 .build();
 
         pool = new ConnectionPool(configuration);
 
         if (initDataBase) {
-            startTables();
+            migrate();
         }
     }
 
@@ -69,22 +87,98 @@ public class DataBaseManager {
             InputStream dbProps = ClassLoader.getSystemResourceAsStream("database.properties");
             Properties properties = new Properties();
             properties.load(dbProps);
+            // Las propiedades de sistema -Ddb.* tienen prioridad, por ejemplo para usar una base de datos en memoria
+            System.getProperties().stringPropertyNames().stream()
+                    .filter(nombre -> nombre.startsWith("db."))
+                    .forEach(nombre -> properties.setProperty(nombre, System.getProperty(nombre)));
+            dbProtocol = properties.getProperty("db.protocol", "file");
             dbUrl = properties.getProperty("db.url");
             dbUser = properties.getProperty("db.user");
             dbPassword = properties.getProperty("db.password");
             initDataBase = Boolean.parseBoolean(properties.getProperty("db.init"));
+            batchSize = Integer.parseInt(properties.getProperty("db.batchSize", "500"));
+            pageSize = Integer.parseInt(properties.getProperty("db.pageSize", "1000"));
+            idBlockSize = Integer.parseInt(properties.getProperty("db.idBlockSize", "1000"));
+            poolSize = Integer.parseInt(properties.getProperty("db.poolSize", "20"));
+            // Por defecto la importación deja libre la mitad del pool para el resto de consultas
+            importConcurrency = Math.max(1, Math.min(poolSize,
+                    Integer.parseInt(properties.getProperty("db.importConcurrency", String.valueOf(poolSize / 2)))));
+            importRails = Integer.parseInt(properties.getProperty("db.importRails",
+                    String.valueOf(Math.min(Runtime.getRuntime().availableProcessors(), importConcurrency))));
 
         } catch (IOException e) {
             logger.error("Error al leer el fichero de propiedades: " + e.getMessage());
         }
     }
 
+    /**
+     * Borra las tablas y vuelve a crear el esquema desde cero con todas las migraciones.
+     */
     public synchronized void startTables() {
         logger.debug("Borrando tablas");
         executeScripts(routes.getRemoveSqlFile()).block();
-        logger.debug("Creando tablas");
-        executeScripts(routes.getCreateSqlFile()).block();
-        logger.debug("Tablas creadas");
+        migrate();
+    }
+
+    /**
+     * Aplica en orden las migraciones (migrations/V{n}__descripcion.sql) con versión mayor que la del esquema,
+     * registrando cada una en SCHEMA_VERSION. Las ya aplicadas no se repiten.
+     * <p>
+     * H2 confirma cada sentencia DDL al ejecutarla, así que si una migración falla a medias lo que ya había creado se
+     * queda: la transacción solo evita que se registre. Por eso cada paso de las migraciones es idempotente (IF NOT
+     * EXISTS, inserciones condicionadas) y al volver a arrancar la migración se repite entera y se completa.
+     */
+    public synchronized void migrate() {
+        Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(SCHEMA_VERSION_TABLE).execute())
+                        .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                        .then(Flux.from(connection.createStatement("SELECT COALESCE(MAX(version), 0) FROM SCHEMA_VERSION").execute())
+                                .flatMap(result -> result.map((fila, datos) -> fila.get(0, Integer.class)))
+                                .single())
+                        .flatMapMany(actual -> Flux.fromIterable(loadMigrations()).filter(migration -> migration.version() > actual))
+                        .concatMap(migration -> applyMigration(connection, migration))
+                        .then(),
+                Connection::close
+        ).block();
+    }
+
+    private Mono<Void> applyMigration(Connection connection, Migration migration) {
+        logger.debug("Aplicando migración " + migration.version() + ": " + migration.descripcion());
+        return Mono.from(connection.beginTransaction())
+                .thenMany(Flux.from(connection.createStatement(migration.sql()).execute()))
+                .concatMap(Result::getRowsUpdated)
+                .then(Mono.defer(() -> Flux.from(connection.createStatement("INSERT INTO SCHEMA_VERSION (version, descripcion) VALUES (?, ?)")
+                                .bind(0, migration.version())
+                                .bind(1, migration.descripcion())
+                                .execute())
+                        .concatMap(Result::getRowsUpdated)
+                        .then()))
+                .then(Mono.defer(() -> Mono.from(connection.commitTransaction())))
+                .onErrorResume(e -> Mono.from(connection.rollbackTransaction())
+                        .then(Mono.error(new IllegalStateException("Error en la migración " + migration.version() + ": " + e.getMessage(), e))));
+    }
+
+    private List<Migration> loadMigrations() {
+        File[] files = new File(routes.getMigrationsDir()).listFiles();
+        if (files == null) {
+            throw new IllegalStateException("No se encuentra el directorio de migraciones: " + routes.getMigrationsDir());
+        }
+        List<Migration> migrations = new ArrayList<>();
+        for (File file : files) {
+            Matcher matcher = MIGRATION_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            try {
+                migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '),
+                        Files.readString(file.toPath(), StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error al leer la migración " + file.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        return migrations;
     }
 
     public Mono<Void> executeScripts(String script) {
@@ -110,6 +204,9 @@ public class DataBaseManager {
 
     }
 
+    private record Migration(int version, String descripcion, String sql) {
+    }
+
     public ConnectionPool getConnectionPool() {
         return this.pool;
     }
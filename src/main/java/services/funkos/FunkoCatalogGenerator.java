@@ -0,0 +1,185 @@
+package services.funkos;
+
+import enums.Modelo;
+import exceptions.File.ErrorInFile;
+import lombok.Builder;
+import models.Funko;
+import models.IdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import repositories.funkos.FunkoRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Genera catálogos sintéticos de funkos de cualquier tamaño. Con la misma semilla y configuración produce siempre las
+ * mismas filas, y como cada una se crea al pedirla la memoria no depende del número de filas.
+ * <p>
+ * El modelo se elige según {@code pesosModelo}, el precio sigue una log-normal alrededor de {@code precioMediana}
+ * (redondeado a .99) y la fecha es uniforme entre {@code desde} y {@code hasta}. Los nombres combinan un personaje de
+ * su modelo, con más peso para los primeros de cada lista, y una variante, así que muchos comparten texto ("Stitch").
+ */
+@Builder
+public class FunkoCatalogGenerator {
+    public static final String CSV_HEADER = "COD,NOMBRE,MODELO,PRECIO,FECHA_LANZAMIENTO";
+    private static final Modelo[] MODELOS = Modelo.values();
+    private static final Map<Modelo, String[]> PERSONAJES = Map.of(
+            Modelo.MARVEL, new String[]{"Spiderman", "Iron Man", "Thor", "Hulk", "Captain America", "Black Widow", "Loki", "Groot"},
+            Modelo.DISNEY, new String[]{"Stitch", "Mickey", "Minnie", "Elsa", "Simba", "Donald", "Buzz Lightyear", "Woody"},
+            Modelo.ANIME, new String[]{"Goku", "Naruto", "Luffy", "Sailor Moon", "Pikachu", "Totoro", "Vegeta", "Sasuke"},
+            Modelo.OTROS, new String[]{"Harry Potter", "Darth Vader", "Baby Yoda", "Tommy Shelby", "Eleven", "Gandalf", "Mario", "Batman"}
+    );
+    private static final String[] VARIANTES = {"Classic", "Deluxe", "Glow", "Hula", "Chase", "Metallic", "Flocked",
+            "Holiday", "Retro", "Jumbo", "Mini", "Limited Edition"};
+    private final Logger logger = LoggerFactory.getLogger(FunkoCatalogGenerator.class);
+
+    @Builder.Default
+    private final long seed = 42;
+    @Builder.Default
+    private final Map<Modelo, Double> pesosModelo = Map.of(Modelo.MARVEL, 0.4, Modelo.DISNEY, 0.3, Modelo.ANIME, 0.2, Modelo.OTROS, 0.1);
+    @Builder.Default
+    private final double precioMediana = 20;
+    // Desviación del logaritmo del precio: con 0.5 el 95% queda entre un tercio y el triple de la mediana
+    @Builder.Default
+    private final double precioSigma = 0.5;
+    @Builder.Default
+    private final double precioMin = 4.99;
+    @Builder.Default
+    private final double precioMax = 499.99;
+    @Builder.Default
+    private final LocalDate desde = LocalDate.of(2015, 1, 1);
+    @Builder.Default
+    private final LocalDate hasta = LocalDate.of(2024, 12, 31);
+
+    /**
+     * Las {@code filas} del catálogo, sin id2: se asigna al guardarlas, igual que al leer el CSV.
+     */
+    public Flux<Funko.FunkoBuilder> generate(long filas) {
+        double[] acumulados = acumulados();
+        long dias = ChronoUnit.DAYS.between(desde, hasta) + 1;
+        return Flux.<Funko.FunkoBuilder, SplittableRandom>generate(() -> new SplittableRandom(seed), (random, sink) -> {
+            Modelo modelo = modelo(random, acumulados);
+            String[] personajes = PERSONAJES.get(modelo);
+            String nombre = personajes[zipf(random, personajes.length)] + " " + VARIANTES[random.nextInt(VARIANTES.length)];
+            double precio = Math.exp(Math.log(precioMediana) + precioSigma * random.nextGaussian());
+            sink.next(Funko.builder()
+                    .cod(uuid(random))
+                    .nombre(nombre)
+                    .modelo(modelo)
+                    .precio(Math.min(precioMax, Math.max(precioMin, Math.round((Math.floor(precio) + 0.99) * 100) / 100.0)))
+                    .fechaLanzamiento(desde.plusDays(random.nextLong(dias))));
+            return random;
+        }).take(filas, true);
+    }
+
+    /**
+     * Escribe el catálogo en un CSV con el formato de FunkoStorageImpl y devuelve el número de filas escritas.
+     */
+    public Mono<Long> writeCsv(String ruta, long filas) {
+        logger.debug("Generando " + filas + " funkos en el CSV: " + ruta);
+        return Mono.using(
+                () -> openCsvWriter(ruta),
+                writer -> generate(filas)
+                        .map(Funko.FunkoBuilder::build)
+                        .doOnNext(funko -> writeLine(writer, funko.getCod() + "," + funko.getNombre() + "," + funko.getModelo()
+                                + "," + funko.getPrecio() + "," + funko.getFechaLanzamiento()))
+                        .count(),
+                writer -> {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        throw new ErrorInFile("Error al cerrar el archivo CSV: " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Guarda el catálogo directamente en la base de datos, por lotes, y devuelve cuántos funkos se han guardado.
+     */
+    public Mono<Long> saveTo(FunkoRepository repository, long filas, int batchSize) {
+        IdGenerator idGenerator = IdGenerator.getInstance();
+        return repository.saveBatches(idGenerator.assign(generate(filas)).buffer(batchSize),
+                        (lote, e) -> logger.error("Error al guardar un lote de " + lote.size() + " funkos generados: " + e.getMessage()))
+                .count();
+    }
+
+    private BufferedWriter openCsvWriter(String ruta) {
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(Path.of(ruta), StandardCharsets.UTF_8);
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            return writer;
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al crear el archivo CSV: " + e.getMessage());
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String linea) {
+        try {
+            writer.write(linea);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double[] acumulados() {
+        double[] acumulados = new double[MODELOS.length];
+        double total = 0;
+        for (int i = 0; i < MODELOS.length; i++) {
+            double peso = pesosModelo.getOrDefault(MODELOS[i], 0.0);
+            if (peso < 0) {
+                throw new IllegalArgumentException("Peso negativo para el modelo " + MODELOS[i]);
+            }
+            total += peso;
+            acumulados[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Ningún modelo tiene peso");
+        }
+        return acumulados;
+    }
+
+    private static Modelo modelo(SplittableRandom random, double[] acumulados) {
+        double valor = random.nextDouble(acumulados[acumulados.length - 1]);
+        int i = 0;
+        // Los modelos sin peso tienen el mismo acumulado que el anterior y nunca se eligen
+        while (valor >= acumulados[i]) {
+            i++;
+        }
+        return MODELOS[i];
+    }
+
+    // Posición con probabilidad proporcional a 1/(i+1): los primeros personajes de cada lista salen mucho más
+    private static int zipf(SplittableRandom random, int n) {
+        double armonico = 0;
+        for (int i = 1; i <= n; i++) {
+            armonico += 1.0 / i;
+        }
+        double valor = random.nextDouble(armonico);
+        int i = 0;
+        while (i < n - 1 && (valor -= 1.0 / (i + 1)) >= 0) {
+            i++;
+        }
+        return i;
+    }
+
+    // UUID de versión 4 válido sacado del generador con semilla, para que el catálogo sea reproducible
+    private static UUID uuid(SplittableRandom random) {
+        long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+}
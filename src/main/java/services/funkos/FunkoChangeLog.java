@@ -0,0 +1,513 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.Tipo;
+import exceptions.File.ErrorInFile;
+import models.Funko;
+import models.Notificacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Registro en disco de los cambios de funkos (NEW/UPDATED/DELETED), solo de escritura al final, para que un
+ * consumidor que se reinicia continúe desde la última secuencia que procesó en lugar de recargarlo todo.
+ * <p>
+ * Se guarda en segmentos de tamaño fijo mapeados en memoria, cada uno con el nombre de la primera secuencia que
+ * contiene; cuando uno se llena se abre el siguiente. Cada entrada ocupa 73 bytes más el nombre en UTF-8:
+ * longitud (int), secuencia (long), tipo (byte), nulos (byte), id2 (long), cod (2 long), precio (double),
+ * modelo (byte), fecha (int, día epoch), createdAt y updatedAt (long, milisegundos UTC), nombre (short + bytes)
+ * y un CRC32. La longitud se escribe la última, así que una entrada a medias por una caída se ignora al leer y se
+ * sobrescribe al reabrir.
+ * <p>
+ * La compactación reescribe los segmentos cerrados dejando solo la última entrada de cada id2 (incluidos los
+ * borrados, para que quien se ponga al día sepa que el funko ya no existe). Las secuencias no cambian: quedan huecos.
+ */
+public class FunkoChangeLog implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String EXTENSION = ".log";
+    private static final String TEMPORAL = ".tmp";
+    // Todo salvo la longitud y los bytes del nombre
+    private static final int FIXED_SIZE = 8 + 1 + 1 + 8 + 16 + 8 + 1 + 4 + 8 + 8 + 2 + 4;
+    private static final int MAX_NOMBRE = 0xFFFF;
+    private static final int SEQUENCE = 4;
+    private static final int ID2 = 14;
+    private static final int NOMBRE = 69;
+    private static final int COD_NULL = 1;
+    private static final int NOMBRE_NULL = 1 << 1;
+    private static final int MODELO_NULL = 1 << 2;
+    private static final int FECHA_NULL = 1 << 3;
+    private static final int CREATED_NULL = 1 << 4;
+    private static final int UPDATED_NULL = 1 << 5;
+    private static final Tipo[] TIPOS = Tipo.values();
+    private static final Modelo[] MODELOS = Modelo.values();
+    private final Logger logger = LoggerFactory.getLogger(FunkoChangeLog.class);
+    private final Path directorio;
+    private final int segmentSize;
+    // Primera secuencia de cada segmento; el último es el activo
+    private final NavigableMap<Long, Path> segmentos = new TreeMap<>();
+    private final Object compactionLock = new Object();
+    // Avisa a los que siguen el registro de que hay entradas nuevas
+    private final Sinks.Many<Long> appended = Sinks.many().multicast().directBestEffort();
+    // Suscripción creada por attach; se cancela al cerrar
+    private Disposable attached;
+    private MappedByteBuffer activo;
+    private long activoFirst;
+    private volatile int position;
+    private long nextSequence;
+    private boolean closed;
+
+    public FunkoChangeLog(Path directorio) {
+        this(directorio, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public FunkoChangeLog(Path directorio, int segmentSize) {
+        if (segmentSize < Integer.BYTES + FIXED_SIZE) {
+            throw new IllegalArgumentException("El tamaño de segmento es demasiado pequeño: " + segmentSize);
+        }
+        this.directorio = directorio;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directorio);
+            recover();
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al abrir el registro de cambios: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Entrada del registro. Los funkos borrados conservan el estado que tenían al borrarse.
+     */
+    public record Entry(long sequence, Tipo tipo, Funko funko) {
+        public Notificacion<Funko> toNotificacion() {
+            return new Notificacion<>(tipo, funko);
+        }
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            for (Path fichero : ficheros.toList()) {
+                String nombre = fichero.getFileName().toString();
+                if (nombre.endsWith(EXTENSION + TEMPORAL)) {
+                    // Restos de una compactación interrumpida; el segmento original sigue intacto
+                    Files.delete(fichero);
+                } else if (nombre.endsWith(EXTENSION)) {
+                    segmentos.put(Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION.length())), fichero);
+                }
+            }
+        }
+        if (segmentos.isEmpty()) {
+            openSegment(1);
+            return;
+        }
+        Map.Entry<Long, Path> ultimo = segmentos.lastEntry();
+        activoFirst = ultimo.getKey();
+        activo = map(ultimo.getValue(), FileChannel.MapMode.READ_WRITE, segmentSize);
+        nextSequence = activoFirst;
+        int p = 0;
+        int end;
+        while ((end = entryEnd(activo, p, segmentSize)) > 0) {
+            nextSequence = activo.getLong(p + SEQUENCE) + 1;
+            p = end;
+        }
+        if (p + Integer.BYTES <= segmentSize && activo.getInt(p) != 0) {
+            logger.warn("Descartada una entrada incompleta al final del registro de cambios {}", ultimo.getValue());
+            for (int i = p; i < segmentSize; i++) {
+                activo.put(i, (byte) 0);
+            }
+        }
+        position = p;
+        logger.debug("Registro de cambios abierto en {}, siguiente secuencia {}", directorio, nextSequence);
+    }
+
+    private void openSegment(long first) throws IOException {
+        Path fichero = directorio.resolve(String.format("%020d%s", first, EXTENSION));
+        activo = map(fichero, FileChannel.MapMode.READ_WRITE, segmentSize);
+        activoFirst = first;
+        nextSequence = first;
+        position = 0;
+        segmentos.put(first, fichero);
+    }
+
+    private static MappedByteBuffer map(Path fichero, FileChannel.MapMode mode, long size) throws IOException {
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            try (FileChannel channel = FileChannel.open(fichero, StandardOpenOption.READ)) {
+                return channel.map(mode, 0, Math.min(size, channel.size()));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Mapear más allá del final hace crecer el fichero (con ceros)
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    /**
+     * Añade la notificación al registro y devuelve su secuencia.
+     */
+    public long append(Notificacion<Funko> notificacion) {
+        return append(notificacion.getTipo(), notificacion.getContenido());
+    }
+
+    public synchronized long append(Tipo tipo, Funko funko) {
+        if (closed) {
+            throw new IllegalStateException("El registro de cambios está cerrado");
+        }
+        if (funko.getId2() == null) {
+            throw new IllegalArgumentException("No se puede registrar un funko sin id2");
+        }
+        byte[] nombre = funko.getNombre() == null ? null : funko.getNombre().getBytes(StandardCharsets.UTF_8);
+        if (nombre != null && nombre.length > MAX_NOMBRE) {
+            throw new IllegalArgumentException("Nombre demasiado largo para el registro de cambios: " + nombre.length + " bytes");
+        }
+        int length = FIXED_SIZE + (nombre == null ? 0 : nombre.length);
+        if (Integer.BYTES + length > segmentSize) {
+            throw new IllegalArgumentException("La entrada no cabe en un segmento: " + length + " bytes");
+        }
+        if (position + Integer.BYTES + length > segmentSize) {
+            roll();
+        }
+        long sequence = nextSequence++;
+        int p = position;
+        int flags = (funko.getCod() == null ? COD_NULL : 0) | (nombre == null ? NOMBRE_NULL : 0)
+                | (funko.getModelo() == null ? MODELO_NULL : 0) | (funko.getFechaLanzamiento() == null ? FECHA_NULL : 0)
+                | (funko.getCreatedAt() == null ? CREATED_NULL : 0) | (funko.getUpdatedAt() == null ? UPDATED_NULL : 0);
+        activo.putLong(p + SEQUENCE, sequence);
+        activo.put(p + 12, (byte) tipo.ordinal());
+        activo.put(p + 13, (byte) flags);
+        activo.putLong(p + ID2, funko.getId2());
+        activo.putLong(p + 22, funko.getCod() == null ? 0 : funko.getCod().getMostSignificantBits());
+        activo.putLong(p + 30, funko.getCod() == null ? 0 : funko.getCod().getLeastSignificantBits());
+        activo.putDouble(p + 38, funko.getPrecio());
+        activo.put(p + 46, (byte) (funko.getModelo() == null ? 0 : funko.getModelo().ordinal()));
+        activo.putInt(p + 47, funko.getFechaLanzamiento() == null ? 0 : (int) funko.getFechaLanzamiento().toEpochDay());
+        activo.putLong(p + 51, millis(funko.getCreatedAt()));
+        activo.putLong(p + 59, millis(funko.getUpdatedAt()));
+        activo.putShort(p + 67, (short) (nombre == null ? 0 : nombre.length));
+        if (nombre != null) {
+            activo.put(p + NOMBRE, nombre);
+        }
+        int crcAt = p + Integer.BYTES + length - Integer.BYTES;
+        activo.putInt(crcAt, checksum(activo, p, crcAt));
+        // Publicamos la entrada: hasta aquí ningún lector la considera escrita
+        activo.putInt(p, length);
+        position = p + Integer.BYTES + length;
+        appended.tryEmitNext(sequence);
+        return sequence;
+    }
+
+    private void roll() {
+        logger.debug("Segmento del registro de cambios lleno, abriendo uno nuevo en la secuencia {}", nextSequence);
+        activo.force();
+        try {
+            openSegment(nextSequence);
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al crear un segmento del registro de cambios: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registra todas las notificaciones del flujo hasta que se cancele la suscripción devuelta o se cierre el
+     * registro. Sustituye a la suscripción de un attach anterior. Una notificación que no se puede registrar se
+     * descarta sin cortar el flujo.
+     */
+    public synchronized Disposable attach(Flux<Notificacion<Funko>> notificaciones) {
+        if (closed) {
+            throw new IllegalStateException("El registro de cambios está cerrado");
+        }
+        if (attached != null) {
+            attached.dispose();
+        }
+        attached = notificaciones.subscribe(
+                notificacion -> {
+                    try {
+                        append(notificacion);
+                    } catch (IllegalArgumentException e) {
+                        logger.error("No se ha podido registrar la notificación " + notificacion + ": " + e.getMessage());
+                    }
+                },
+                e -> logger.error("El registro de cambios ha dejado de recibir notificaciones", e));
+        return attached;
+    }
+
+    /**
+     * Entradas ya escritas con secuencia mayor o igual que fromSequence, en orden. Termina al llegar al final
+     * que había al suscribirse.
+     */
+    public Flux<Entry> read(long fromSequence) {
+        return Flux.generate(
+                () -> snapshot(fromSequence),
+                (reader, sink) -> {
+                    Entry entry = reader.next();
+                    if (entry == null) {
+                        sink.complete();
+                    } else {
+                        sink.next(entry);
+                    }
+                    return reader;
+                });
+    }
+
+    /**
+     * Como {@link #read(long)}, pero no termina: después de ponerse al día sigue emitiendo las entradas nuevas
+     * hasta que se cierre el registro.
+     */
+    public Flux<Entry> follow(long fromSequence) {
+        return Flux.defer(() -> {
+            AtomicLong siguiente = new AtomicLong(fromSequence);
+            // Nos suscribimos a los avisos antes de leer para no perder nada; basta con recordar el último
+            return Flux.merge(Mono.just(fromSequence), appended.asFlux())
+                    .onBackpressureLatest()
+                    .publishOn(Schedulers.boundedElastic(), 1)
+                    .concatMap(aviso -> read(siguiente.get()).doOnNext(e -> siguiente.set(e.sequence() + 1)), 1);
+        });
+    }
+
+    private synchronized Reader snapshot(long fromSequence) {
+        Long desde = segmentos.floorKey(fromSequence);
+        List<Path> ficheros = new ArrayList<>(segmentos.tailMap(desde == null ? segmentos.firstKey() : desde, true).values());
+        return new Reader(ficheros, segmentos.get(activoFirst), position, fromSequence);
+    }
+
+    /**
+     * Deja en los segmentos cerrados solo la última entrada de cada id2 y devuelve cuántas entradas se han quitado.
+     * El segmento activo no se toca, pero sus entradas sí cuentan para saber cuál es la última.
+     */
+    public long compact() {
+        synchronized (compactionLock) {
+            Reader todo = snapshot(0);
+            Map<Long, Long> ultimas = new HashMap<>();
+            try {
+                for (Path fichero : todo.ficheros) {
+                    ByteBuffer buffer = todo.map(fichero);
+                    if (buffer == null) {
+                        continue;
+                    }
+                    int limit = todo.limit(fichero, buffer);
+                    int p = 0;
+                    int end;
+                    while ((end = entryEnd(buffer, p, limit)) > 0) {
+                        ultimas.put(buffer.getLong(p + ID2), buffer.getLong(p + SEQUENCE));
+                        p = end;
+                    }
+                }
+                long eliminadas = 0;
+                for (Path fichero : todo.ficheros) {
+                    if (!fichero.equals(todo.activo)) {
+                        eliminadas += compact(fichero, ultimas);
+                    }
+                }
+                logger.debug("Compactación del registro de cambios terminada: {} entradas eliminadas", eliminadas);
+                return eliminadas;
+            } catch (IOException e) {
+                throw new ErrorInFile("Error al compactar el registro de cambios: " + e.getMessage());
+            }
+        }
+    }
+
+    private long compact(Path fichero, Map<Long, Long> ultimas) throws IOException {
+        ByteBuffer buffer = map(fichero, FileChannel.MapMode.READ_ONLY, Integer.MAX_VALUE);
+        Path temporal = fichero.resolveSibling(fichero.getFileName() + TEMPORAL);
+        long eliminadas = 0;
+        boolean vacio = true;
+        try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int p = 0;
+            int end;
+            while ((end = entryEnd(buffer, p, buffer.limit())) > 0) {
+                if (ultimas.get(buffer.getLong(p + ID2)) == buffer.getLong(p + SEQUENCE)) {
+                    salida.write(buffer.slice(p, end - p));
+                    vacio = false;
+                } else {
+                    eliminadas++;
+                }
+                p = end;
+            }
+            salida.force(true);
+        }
+        if (eliminadas == 0) {
+            Files.delete(temporal);
+        } else if (vacio) {
+            synchronized (this) {
+                segmentos.values().remove(fichero);
+            }
+            Files.delete(temporal);
+            Files.delete(fichero);
+        } else {
+            Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return eliminadas;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Escribe en disco lo que haya pendiente del segmento activo.
+     */
+    public synchronized void flush() {
+        activo.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (attached != null) {
+            attached.dispose();
+        }
+        activo.force();
+        appended.tryEmitComplete();
+    }
+
+    // Fin de la entrada que empieza en p o -1 si no hay una entrada completa y correcta
+    private static int entryEnd(ByteBuffer buffer, int p, int limit) {
+        if (p + Integer.BYTES > limit) {
+            return -1;
+        }
+        int length = buffer.getInt(p);
+        if (length < FIXED_SIZE || length > limit - p - Integer.BYTES) {
+            return -1;
+        }
+        int end = p + Integer.BYTES + length;
+        int crcAt = end - Integer.BYTES;
+        if ((buffer.getShort(p + 67) & 0xFFFF) != crcAt - p - NOMBRE || buffer.getInt(crcAt) != checksum(buffer, p, crcAt)) {
+            return -1;
+        }
+        return end;
+    }
+
+    private static int checksum(ByteBuffer buffer, int p, int crcAt) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(p + SEQUENCE, crcAt - p - SEQUENCE));
+        return (int) crc.getValue();
+    }
+
+    private static Entry decode(ByteBuffer buffer, int p) {
+        int flags = buffer.get(p + 13);
+        int nombreLength = buffer.getShort(p + 67) & 0xFFFF;
+        String nombre = null;
+        if ((flags & NOMBRE_NULL) == 0) {
+            byte[] bytes = new byte[nombreLength];
+            buffer.get(p + NOMBRE, bytes);
+            nombre = new String(bytes, StandardCharsets.UTF_8);
+        }
+        Funko funko = Funko.builder()
+                .id2(buffer.getLong(p + ID2))
+                .cod((flags & COD_NULL) != 0 ? null : new UUID(buffer.getLong(p + 22), buffer.getLong(p + 30)))
+                .precio(buffer.getDouble(p + 38))
+                .modelo((flags & MODELO_NULL) != 0 ? null : MODELOS[buffer.get(p + 46)])
+                .fechaLanzamiento((flags & FECHA_NULL) != 0 ? null : LocalDate.ofEpochDay(buffer.getInt(p + 47)))
+                .createdAt((flags & CREATED_NULL) != 0 ? null : dateTime(buffer.getLong(p + 51)))
+                .updatedAt((flags & UPDATED_NULL) != 0 ? null : dateTime(buffer.getLong(p + 59)))
+                .nombre(nombre)
+                .build();
+        return new Entry(buffer.getLong(p + SEQUENCE), TIPOS[buffer.get(p + 12)], funko);
+    }
+
+    private static long millis(LocalDateTime fecha) {
+        return fecha == null ? 0 : fecha.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime dateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    // Recorre una instantánea de los segmentos; del activo solo lee hasta donde estaba escrito al crearla
+    private static final class Reader {
+        private final List<Path> ficheros;
+        private final Path activo;
+        private final int activoLimit;
+        private final long fromSequence;
+        private int index;
+        private ByteBuffer buffer;
+        private int limit;
+        private int position;
+
+        private Reader(List<Path> ficheros, Path activo, int activoLimit, long fromSequence) {
+            this.ficheros = ficheros;
+            this.activo = activo;
+            this.activoLimit = activoLimit;
+            this.fromSequence = fromSequence;
+        }
+
+        private Entry next() {
+            while (true) {
+                if (buffer == null) {
+                    if (index >= ficheros.size()) {
+                        return null;
+                    }
+                    Path fichero = ficheros.get(index);
+                    try {
+                        buffer = map(fichero);
+                    } catch (IOException e) {
+                        throw new ErrorInFile("Error al leer el registro de cambios: " + e.getMessage());
+                    }
+                    if (buffer == null) {
+                        index++;
+                        continue;
+                    }
+                    limit = limit(fichero, buffer);
+                    position = 0;
+                }
+                int end = entryEnd(buffer, position, limit);
+                if (end < 0) {
+                    buffer = null;
+                    index++;
+                    continue;
+                }
+                int p = position;
+                position = end;
+                if (buffer.getLong(p + SEQUENCE) >= fromSequence) {
+                    return decode(buffer, p);
+                }
+            }
+        }
+
+        // Null si una compactación ha borrado el segmento mientras tanto
+        private ByteBuffer map(Path fichero) throws IOException {
+            try {
+                return FunkoChangeLog.map(fichero, FileChannel.MapMode.READ_ONLY, Integer.MAX_VALUE);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        private int limit(Path fichero, ByteBuffer buffer) {
+            return fichero.equals(activo) ? Math.min(activoLimit, buffer.limit()) : buffer.limit();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package services.funkos;
+
+import enums.Modelo;
+import exceptions.File.ErrorInFile;
+import models.Funko;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parser del CSV de funkos que trabaja directamente sobre los bytes de un fichero mapeado en memoria.
+ * El fichero se divide en trozos alineados a fin de línea para poder procesarlos en paralelo; números,
+ * fechas, modelos y UUIDs se decodifican sin crear Strings intermedios (solo se crea el del nombre).
+ */
+final class FunkoCsvChunkParser {
+    // Los trozos nunca superan el límite de un MappedByteBuffer
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final long MIN_CHUNK_SIZE = 1024L * 1024;
+    // Igual que el loadCsv original, que se quedaba con los 35 primeros caracteres del código
+    private static final int COD_LENGTH = 35;
+    private static final Modelo[] MODELOS = Modelo.values();
+    private static final byte[][] MODELOS_BYTES = new byte[MODELOS.length][];
+    private static final double[] POTENCIAS_10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    static {
+        for (int i = 0; i < MODELOS.length; i++) {
+            MODELOS_BYTES[i] = MODELOS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private FunkoCsvChunkParser() {
+    }
+
+    record Chunk(long start, long length) {
+    }
+
+    /**
+     * Divide el fichero (sin la cabecera) en trozos que empiezan y terminan en un salto de línea.
+     */
+    static List<Chunk> split(FileChannel channel, int partes) throws IOException {
+        long size = channel.size();
+        long start = nextLine(channel, 0, size);
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, (size - start) / (partes * 4L) + 1));
+        List<Chunk> chunks = new ArrayList<>();
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLine(channel, start + chunkSize, size);
+            chunks.add(new Chunk(start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Posición del primer byte tras el siguiente '\n' a partir de from
+    private static long nextLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Emite los funkos de un trozo, uno por cada petición. Salen sin id2: lo asigna quien los guarda.
+     */
+    static Flux<Funko> parse(FileChannel channel, Chunk chunk) {
+        return Flux.generate(
+                () -> new Cursor(map(channel, chunk)),
+                (cursor, sink) -> {
+                    Funko funko = cursor.next();
+                    if (funko == null) {
+                        sink.complete();
+                    } else {
+                        sink.next(funko);
+                    }
+                    return cursor;
+                });
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, Chunk chunk) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, chunk.start(), chunk.length());
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al mapear el archivo CSV: " + e.getMessage());
+        }
+    }
+
+    private static final class Cursor {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private byte[] nombre = new byte[128];
+        private int position;
+
+        private Cursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+        }
+
+        private Funko next() {
+            // Saltamos líneas vacías
+            while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r')) {
+                position++;
+            }
+            if (position >= limit) {
+                return null;
+            }
+            int lineStart = position;
+            int lineEnd = endOfLine(lineStart);
+            position = lineEnd < limit ? lineEnd + 1 : limit;
+            int end = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+            int codEnd = field(lineStart, end);
+            int nombreEnd = field(codEnd + 1, end);
+            int modeloEnd = field(nombreEnd + 1, end);
+            int precioEnd = field(modeloEnd + 1, end);
+            if (precioEnd >= end) {
+                throw new ErrorInFile("Línea mal formada en el archivo CSV");
+            }
+            int fechaEnd = field(precioEnd + 1, end);
+
+            return Funko.builder()
+                    .cod(uuid(lineStart, Math.min(codEnd, lineStart + COD_LENGTH)))
+                    .nombre(string(codEnd + 1, nombreEnd))
+                    .modelo(modelo(nombreEnd + 1, modeloEnd))
+                    .precio(decimal(modeloEnd + 1, precioEnd))
+                    .fechaLanzamiento(date(precioEnd + 1, fechaEnd))
+                    .build();
+        }
+
+        private int field(int from, int end) {
+            int i = from;
+            while (i < end && buffer.get(i) != ',') {
+                i++;
+            }
+            return i;
+        }
+
+        private int endOfLine(int from) {
+            int i = from;
+            while (i < limit && buffer.get(i) != '\n') {
+                i++;
+            }
+            return i;
+        }
+
+        private String string(int from, int to) {
+            int length = to - from;
+            if (length > nombre.length) {
+                nombre = new byte[Math.max(length, nombre.length * 2)];
+            }
+            buffer.get(from, nombre, 0, length);
+            return new String(nombre, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private Modelo modelo(int from, int to) {
+            int length = to - from;
+            for (int m = 0; m < MODELOS_BYTES.length; m++) {
+                byte[] candidato = MODELOS_BYTES[m];
+                if (candidato.length != length) {
+                    continue;
+                }
+                int i = 0;
+                while (i < length && buffer.get(from + i) == candidato[i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return MODELOS[m];
+                }
+            }
+            throw new IllegalArgumentException("Modelo desconocido: " + ascii(from, to));
+        }
+
+        // Mismo resultado que UUID.fromString sobre el texto (incluida su tolerancia con grupos más cortos)
+        private UUID uuid(int from, int to) {
+            int[] guiones = new int[4];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == '-') {
+                    if (n == 4) {
+                        throw new IllegalArgumentException("UUID inválido: " + ascii(from, to));
+                    }
+                    guiones[n++] = i;
+                }
+            }
+            if (n != 4) {
+                throw new IllegalArgumentException("UUID inválido: " + ascii(from, to));
+            }
+            long most = hex(from, guiones[0]) & 0xffffffffL;
+            most = (most << 16) | (hex(guiones[0] + 1, guiones[1]) & 0xffffL);
+            most = (most << 16) | (hex(guiones[1] + 1, guiones[2]) & 0xffffL);
+            long least = hex(guiones[2] + 1, guiones[3]) & 0xffffL;
+            least = (least << 48) | (hex(guiones[3] + 1, to) & 0xffffffffffffL);
+            return new UUID(most, least);
+        }
+
+        private long hex(int from, int to) {
+            if (from >= to || to - from > 16) {
+                throw new IllegalArgumentException("UUID inválido: " + ascii(from, to));
+            }
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = Character.digit(buffer.get(i), 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("UUID inválido: " + ascii(from, to));
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        // Entero y decimales exactos, una única división: mismo redondeo que Double.parseDouble
+        private double decimal(int from, int to) {
+            int i = from;
+            boolean negativo = i < to && buffer.get(i) == '-';
+            if (negativo) {
+                i++;
+            }
+            long mantisa = 0;
+            int digitos = 0;
+            int decimales = -1;
+            for (; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && decimales < 0) {
+                    decimales = 0;
+                } else if (b >= '0' && b <= '9' && digitos < 15) {
+                    mantisa = mantisa * 10 + (b - '0');
+                    digitos++;
+                    if (decimales >= 0) {
+                        decimales++;
+                    }
+                } else {
+                    return Double.parseDouble(ascii(from, to));
+                }
+            }
+            if (digitos == 0) {
+                return Double.parseDouble(ascii(from, to));
+            }
+            double value = decimales > 0 ? mantisa / POTENCIAS_10[decimales] : mantisa;
+            return negativo ? -value : value;
+        }
+
+        private LocalDate date(int from, int to) {
+            int[] partes = new int[3];
+            int n = 0;
+            int value = 0;
+            boolean hayDigitos = false;
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '-' && hayDigitos && n < 2) {
+                    partes[n++] = value;
+                    value = 0;
+                    hayDigitos = false;
+                } else if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    hayDigitos = true;
+                } else {
+                    throw new IllegalArgumentException("Fecha inválida: " + ascii(from, to));
+                }
+            }
+            if (n != 2 || !hayDigitos) {
+                throw new IllegalArgumentException("Fecha inválida: " + ascii(from, to));
+            }
+            return LocalDate.of(partes[0], partes[1], value);
+        }
+
+        // Solo para mensajes de error y casos raros de precio
+        private String ascii(int from, int to) {
+            byte[] bytes = new byte[Math.max(0, to - from)];
+            buffer.get(from, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
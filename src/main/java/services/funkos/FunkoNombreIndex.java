@@ -0,0 +1,329 @@
+package services.funkos;
+
+import models.Funko;
+import models.Notificacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido de trigramas sobre el nombre de los funkos para búsquedas de subcadenas (lo mismo que
+ * LIKE '%texto%', distinguiendo mayúsculas). Cada trigrama guarda la lista ordenada de id2 que lo contienen en un
+ * long[]; una búsqueda cruza las listas de los trigramas del texto, empezando por la más corta, y comprueba los
+ * candidatos contra el nombre.
+ * <p>
+ * Se construye con los funkos de la base de datos y se mantiene con las notificaciones, igual que
+ * {@link FunkoStatistics}. Si las notificaciones fallan deja de estar listo, y quien lo use debe volver a la base de
+ * datos hasta que se llame otra vez a {@link #start}.
+ */
+public class FunkoNombreIndex {
+    private static final long[] VACIO = new long[0];
+    private final Logger logger = LoggerFactory.getLogger(FunkoNombreIndex.class);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> nombres = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final List<Notificacion<Funko>> pendientes = new ArrayList<>();
+    private boolean seeded;
+    // Cada start abre una generación nueva; los avisos de suscripciones anteriores se ignoran
+    private long generacion;
+    private Disposable subscription;
+
+    // Lista de id2 ordenada y sin repetidos; solo crece de tamaño cuando se llena
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        private void remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Se suscribe a las notificaciones y construye el índice con los funkos actuales. Las notificaciones que llegan
+     * mientras tanto se aplican al terminar. Si ya estaba en marcha se cancela la suscripción anterior y se empieza
+     * de cero.
+     */
+    public Mono<Disposable> start(Flux<Funko> actuales, Flux<Notificacion<Funko>> notificaciones) {
+        return Mono.defer(() -> {
+            long actual = restart();
+            Disposable subscription = notificaciones.subscribe(this::onNotification, error -> onFeedError(actual, error));
+            keepSubscription(actual, subscription);
+            return actuales
+                    .doOnNext(funko -> seed(actual, funko))
+                    .then(Mono.fromRunnable(() -> finishSeed(actual)))
+                    .doOnError(e -> onFeedError(actual, e))
+                    .thenReturn(subscription);
+        });
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return seeded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deja el índice sin usar hasta el próximo {@link #start}, por ejemplo tras cambios en la base de datos que no
+     * generan notificación.
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            stop();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * id2 de los funkos cuyo nombre contiene el texto, en orden ascendente.
+     */
+    public long[] search(String texto) {
+        lock.readLock().lock();
+        try {
+            if (texto.length() < 3) {
+                // Sin trigramas que usar: recorremos los nombres
+                return nombres.entrySet().stream()
+                        .filter(entry -> entry.getValue().contains(texto))
+                        .mapToLong(Map.Entry::getKey)
+                        .sorted()
+                        .toArray();
+            }
+            long[] candidatos = intersect(texto);
+            int n = 0;
+            for (long id : candidatos) {
+                if (nombres.get(id).contains(texto)) {
+                    candidatos[n++] = id;
+                }
+            }
+            return Arrays.copyOf(candidatos, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(String texto) {
+        return search(texto).length;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nombres.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aplica una notificación. Normalmente la llama la suscripción creada en {@link #start}.
+     */
+    public void apply(Notificacion<Funko> notificacion) {
+        switch (notificacion.getTipo()) {
+            case NEW, UPDATED -> put(notificacion.getContenido());
+            case DELETED -> remove(notificacion.getContenido().getId2());
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nombres.clear();
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void onNotification(Notificacion<Funko> notificacion) {
+        lock.writeLock().lock();
+        try {
+            if (!seeded) {
+                pendientes.add(notificacion);
+                return;
+            }
+            apply(notificacion);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long restart() {
+        lock.writeLock().lock();
+        try {
+            stop();
+            nombres.clear();
+            postings.clear();
+            return ++generacion;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void keepSubscription(long actual, Disposable subscription) {
+        lock.writeLock().lock();
+        try {
+            if (actual == generacion && this.subscription == null) {
+                this.subscription = subscription;
+                return;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Ha fallado o la ha sustituido otro start antes de guardarla
+        subscription.dispose();
+    }
+
+    private void onFeedError(long actual, Throwable error) {
+        lock.writeLock().lock();
+        try {
+            if (actual != generacion) {
+                return;
+            }
+            logger.error("Índice de nombres desactivado por un error en las notificaciones: " + error.getMessage());
+            stop();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Deja de escuchar y de responder búsquedas; los datos se conservan hasta el siguiente start
+    private void stop() {
+        generacion++;
+        seeded = false;
+        pendientes.clear();
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    private void seed(long actual, Funko funko) {
+        lock.writeLock().lock();
+        try {
+            if (actual == generacion) {
+                put(funko);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void finishSeed(long actual) {
+        lock.writeLock().lock();
+        try {
+            if (actual != generacion) {
+                return;
+            }
+            pendientes.forEach(this::apply);
+            pendientes.clear();
+            seeded = true;
+            logger.debug("Índice de nombres construido con " + nombres.size() + " funkos y " + postings.size() + " trigramas");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Funko funko) {
+        lock.writeLock().lock();
+        try {
+            remove(funko.getId2());
+            String nombre = funko.getNombre() == null ? "" : funko.getNombre();
+            nombres.put(funko.getId2(), nombre);
+            for (int i = 0; i + 3 <= nombre.length(); i++) {
+                postings.computeIfAbsent(trigram(nombre, i), k -> new Postings()).add(funko.getId2());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long id2) {
+        lock.writeLock().lock();
+        try {
+            String nombre = nombres.remove(id2);
+            if (nombre == null) {
+                return;
+            }
+            for (int i = 0; i + 3 <= nombre.length(); i++) {
+                long key = trigram(nombre, i);
+                Postings lista = postings.get(key);
+                if (lista != null) {
+                    lista.remove(id2);
+                    if (lista.size == 0) {
+                        postings.remove(key);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long[] intersect(String texto) {
+        List<Postings> listas = new ArrayList<>();
+        for (int i = 0; i + 3 <= texto.length(); i++) {
+            Postings lista = postings.get(trigram(texto, i));
+            if (lista == null) {
+                return VACIO;
+            }
+            if (!listas.contains(lista)) {
+                listas.add(lista);
+            }
+        }
+        listas.sort((a, b) -> Integer.compare(a.size, b.size));
+        Postings menor = listas.get(0);
+        long[] resultado = Arrays.copyOf(menor.ids, menor.size);
+        int n = resultado.length;
+        for (int l = 1; l < listas.size() && n > 0; l++) {
+            Postings lista = listas.get(l);
+            int m = 0;
+            int desde = 0;
+            for (int i = 0; i < n; i++) {
+                int pos = Arrays.binarySearch(lista.ids, desde, lista.size, resultado[i]);
+                if (pos >= 0) {
+                    resultado[m++] = resultado[i];
+                    desde = pos + 1;
+                } else {
+                    desde = -pos - 1;
+                }
+            }
+            n = m;
+        }
+        return n == resultado.length ? resultado : Arrays.copyOf(resultado, n);
+    }
+
+    private static long trigram(String texto, int i) {
+        return ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2);
+    }
+}
@@ -0,0 +1,292 @@
+package services.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import models.Notificacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Estadísticas del catálogo (número, suma y media de precios por modelo y funko más caro) que se calculan una vez
+ * desde la base de datos y después se mantienen con las notificaciones NEW/UPDATED/DELETED.
+ * <p>
+ * Las escrituras se serializan; cada una publica una instantánea inmutable, así que las lecturas son O(1) y sin
+ * locks. Los cambios que no generan notificación (por ejemplo importFromCsvNoNotify) no se reflejan.
+ * <p>
+ * Hasta terminar la semilla, o si las notificaciones fallan y las cifras dejan de estar al día, {@link #isReady()}
+ * devuelve false y las lecturas lanzan IllegalStateException; se recuperan llamando otra vez a {@link #start}.
+ */
+public class FunkoStatistics {
+    private static final Modelo[] MODELOS = Modelo.values();
+    // Mismo orden que la consulta SQL (ORDER BY precio DESC, id2 DESC): por precio y, con empates, el mayor id2. El
+    // precio se compara como REAL, igual que en la tabla, para que dos precios que allí son iguales empaten aquí
+    private static final Comparator<Entrada> POR_PRECIO = Comparator.<Entrada>comparingDouble(entrada -> (float) entrada.precio())
+            .thenComparingLong(Entrada::id2);
+    private final Logger logger = LoggerFactory.getLogger(FunkoStatistics.class);
+    private final Object lock = new Object();
+    private final Map<Long, Entrada> funkos = new HashMap<>();
+    private final TreeSet<Entrada> porPrecio = new TreeSet<>(POR_PRECIO);
+    private final long[] counts = new long[MODELOS.length];
+    // Sumas exactas para que altas y bajas no acumulen error de redondeo
+    private final BigDecimal[] sums = new BigDecimal[MODELOS.length];
+    private final List<Notificacion<Funko>> pendientes = new ArrayList<>();
+    private boolean seeded;
+    // Cada start abre una generación nueva; los avisos de suscripciones anteriores se ignoran
+    private long generacion;
+    private Disposable subscription;
+    private volatile boolean ready;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public FunkoStatistics() {
+        Arrays.fill(sums, BigDecimal.ZERO);
+    }
+
+    private record Entrada(long id2, Modelo modelo, double precio, Funko funko) {
+    }
+
+    /**
+     * Instantánea inmutable de las estadísticas.
+     */
+    public record Snapshot(long count, double sum, Map<Modelo, Long> countByModelo, Map<Modelo, Double> sumByModelo,
+                           Funko mostExpensive) {
+        static final Snapshot EMPTY = new Snapshot(0, 0, Map.of(), Map.of(), null);
+
+        public double average() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public double average(Modelo modelo) {
+            long n = countByModelo.getOrDefault(modelo, 0L);
+            return n == 0 ? 0 : sumByModelo.get(modelo) / n;
+        }
+
+        public Optional<Funko> getMostExpensive() {
+            return Optional.ofNullable(mostExpensive);
+        }
+    }
+
+    /**
+     * Se suscribe a las notificaciones y rellena las estadísticas con el contenido actual. Las notificaciones que
+     * llegan mientras se leen los funkos se guardan y se aplican al terminar, en orden. Si ya estaban en marcha se
+     * cancela la suscripción anterior y se empieza de cero.
+     */
+    public Mono<Disposable> start(Flux<Funko> actuales, Flux<Notificacion<Funko>> notificaciones) {
+        return Mono.defer(() -> {
+            long actual = restart();
+            Disposable subscription = notificaciones.subscribe(this::onNotification, error -> onFeedError(actual, error));
+            keepSubscription(actual, subscription);
+            return actuales
+                    .doOnNext(funko -> seed(actual, funko))
+                    .then(Mono.fromRunnable(() -> finishSeed(actual)))
+                    .doOnError(e -> onFeedError(actual, e))
+                    .thenReturn(subscription);
+        });
+    }
+
+    /**
+     * Si las cifras están al día: la semilla ha terminado y las notificaciones no han fallado desde entonces.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Snapshot getSnapshot() {
+        if (!ready) {
+            throw new IllegalStateException("Las estadísticas de funkos no están al día");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Como {@link #getSnapshot()}, pero vacío en lugar de lanzar la excepción si las cifras no están al día.
+     */
+    public Optional<Snapshot> findSnapshot() {
+        return ready ? Optional.of(snapshot) : Optional.empty();
+    }
+
+    public long count() {
+        return getSnapshot().count();
+    }
+
+    public double averagePrice() {
+        return getSnapshot().average();
+    }
+
+    public Map<Modelo, Long> countByModelo() {
+        return getSnapshot().countByModelo();
+    }
+
+    public Optional<Funko> mostExpensive() {
+        return getSnapshot().getMostExpensive();
+    }
+
+    /**
+     * Aplica una notificación. Normalmente la llama la suscripción creada en {@link #start}.
+     */
+    public void apply(Notificacion<Funko> notificacion) {
+        synchronized (lock) {
+            Funko funko = notificacion.getContenido();
+            switch (notificacion.getTipo()) {
+                case NEW, UPDATED -> upsert(funko);
+                case DELETED -> delete(funko.getId2());
+            }
+            publish();
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            reset();
+            publish();
+        }
+    }
+
+    /**
+     * Marca las estadísticas como no disponibles hasta el próximo {@link #start}, por ejemplo tras cambios en la
+     * base de datos que no generan notificación.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            stop();
+        }
+    }
+
+    private long restart() {
+        synchronized (lock) {
+            stop();
+            reset();
+            publish();
+            return ++generacion;
+        }
+    }
+
+    private void keepSubscription(long actual, Disposable subscription) {
+        synchronized (lock) {
+            if (actual == generacion && this.subscription == null) {
+                this.subscription = subscription;
+                return;
+            }
+        }
+        // Ha fallado o la ha sustituido otro start antes de guardarla
+        subscription.dispose();
+    }
+
+    private void onFeedError(long actual, Throwable error) {
+        synchronized (lock) {
+            if (actual != generacion) {
+                return;
+            }
+            logger.error("Estadísticas de funkos desactualizadas por un error en las notificaciones: " + error.getMessage());
+            stop();
+        }
+    }
+
+    // Deja de escuchar y de servir cifras; los datos se conservan hasta el siguiente start
+    private void stop() {
+        generacion++;
+        ready = false;
+        seeded = false;
+        pendientes.clear();
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    private void reset() {
+        funkos.clear();
+        porPrecio.clear();
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, BigDecimal.ZERO);
+    }
+
+    private void onNotification(Notificacion<Funko> notificacion) {
+        synchronized (lock) {
+            if (!seeded) {
+                pendientes.add(notificacion);
+                return;
+            }
+        }
+        apply(notificacion);
+    }
+
+    private void seed(long actual, Funko funko) {
+        synchronized (lock) {
+            if (actual == generacion) {
+                upsert(funko);
+            }
+        }
+    }
+
+    private void finishSeed(long actual) {
+        synchronized (lock) {
+            if (actual != generacion) {
+                return;
+            }
+            pendientes.forEach(this::apply);
+            pendientes.clear();
+            seeded = true;
+            publish();
+            ready = true;
+            logger.debug("Estadísticas de funkos calculadas con " + funkos.size() + " funkos");
+        }
+    }
+
+    private void upsert(Funko funko) {
+        Entrada anterior = funkos.get(funko.getId2());
+        if (anterior != null) {
+            remove(anterior);
+        }
+        Entrada entrada = new Entrada(funko.getId2(), funko.getModelo(), funko.getPrecio(), funko);
+        funkos.put(entrada.id2(), entrada);
+        porPrecio.add(entrada);
+        counts[entrada.modelo().ordinal()]++;
+        sums[entrada.modelo().ordinal()] = sums[entrada.modelo().ordinal()].add(new BigDecimal(entrada.precio()));
+    }
+
+    private void delete(long id2) {
+        Entrada anterior = funkos.get(id2);
+        if (anterior != null) {
+            remove(anterior);
+        }
+    }
+
+    private void remove(Entrada entrada) {
+        funkos.remove(entrada.id2());
+        porPrecio.remove(entrada);
+        counts[entrada.modelo().ordinal()]--;
+        sums[entrada.modelo().ordinal()] = sums[entrada.modelo().ordinal()].subtract(new BigDecimal(entrada.precio()));
+    }
+
+    private void publish() {
+        Map<Modelo, Long> countByModelo = new EnumMap<>(Modelo.class);
+        Map<Modelo, Double> sumByModelo = new EnumMap<>(Modelo.class);
+        long count = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Modelo modelo : MODELOS) {
+            if (counts[modelo.ordinal()] > 0) {
+                countByModelo.put(modelo, counts[modelo.ordinal()]);
+                sumByModelo.put(modelo, sums[modelo.ordinal()].doubleValue());
+                count += counts[modelo.ordinal()];
+                sum = sum.add(sums[modelo.ordinal()]);
+            }
+        }
+        snapshot = new Snapshot(count, sum.doubleValue(), Collections.unmodifiableMap(countByModelo),
+                Collections.unmodifiableMap(sumByModelo), porPrecio.isEmpty() ? null : porPrecio.last().funko());
+    }
+}
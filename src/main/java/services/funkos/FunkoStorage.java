@@ -5,7 +5,12 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface FunkoStorage {
+    // Los funkos leídos del CSV no tienen id2: se lo asigna quien los guarda
     Flux<Funko> loadCsv();
 
+    Flux<Funko> loadCsvMapped(String ruta);
+
     Mono<Void> exportJson(String ruta);
+
+    Mono<Void> exportJson(String ruta, Flux<Funko> funkos, boolean pretty, boolean gzip);
 }
@@ -3,36 +3,47 @@ package services.funkos;
 import adapters.LocalDateAdapter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import enums.Modelo;
 import exceptions.File.ErrorInFile;
 import exceptions.File.NotFoundFile;
 import models.Funko;
-import models.IdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import repositories.funkos.FunkoRepositoryImpl;
 import routes.Routes;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 public class FunkoStorageImpl implements FunkoStorage {
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final int EXPORT_PREFETCH = 256;
     private static FunkoStorageImpl instance;
-    private final IdGenerator idGenerator;
     private final Routes routes;
     private final Logger logger = LoggerFactory.getLogger(FunkoRepositoryImpl.class);
     private final List<Funko> funkos = new ArrayList<>();
 
     private FunkoStorageImpl() {
-        idGenerator = IdGenerator.getInstance();
         routes = Routes.getInstance();
     }
 
@@ -46,7 +57,11 @@ public class FunkoStorageImpl implements FunkoStorage {
     @Override
     public Flux<Funko> loadCsv() {
         return Flux.using(
-                () -> new BufferedReader(new FileReader(routes.getRouteFunkosCsv())),
+                () -> {
+                    // Cada carga sustituye a la anterior; si no, la lista crecería con cada lectura del CSV
+                    funkos.clear();
+                    return new BufferedReader(new FileReader(routes.getRouteFunkosCsv()));
+                },
                 br -> Flux.fromStream(br.lines().skip(1).map(line -> {
                     String[] split = line.split(",");
 
@@ -56,16 +71,13 @@ public class FunkoStorageImpl implements FunkoStorage {
 
                     LocalDate dia = LocalDate.of(year, month, day);
                     UUID cod = UUID.fromString(split[0].substring(0, 35));
-                    Funko funko = Funko.builder()
+                    return Funko.builder()
                             .cod(cod)
-                            .id2(idGenerator.getAndIncrement())
                             .nombre(split[1]).modelo(Modelo.valueOf(split[2]))
                             .precio(Double.parseDouble(split[3]))
                             .fechaLanzamiento(dia)
                             .build();
-                    funkos.add(funko);
-                    return funko;
-                })),
+                })).doOnNext(funkos::add),
                 br -> {
                     try {
                         br.close();
@@ -75,6 +87,44 @@ public class FunkoStorageImpl implements FunkoStorage {
                 });
     }
 
+    @Override
+    public Flux<Funko> loadCsvMapped(String ruta) {
+        logger.debug("Cargando funkos del CSV mapeado en memoria, ruta: " + ruta);
+        int partes = Runtime.getRuntime().availableProcessors();
+
+        // Cada trozo se parsea en su propio hilo; flatMapSequential mantiene el orden del fichero y la contrapresión
+        return Flux.using(
+                () -> openChannel(ruta),
+                channel -> Flux.defer(() -> Flux.fromIterable(splitCsv(channel, partes)))
+                        .flatMapSequential(chunk -> FunkoCsvChunkParser.parse(channel, chunk)
+                                .subscribeOn(Schedulers.parallel()), partes),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new ErrorInFile("Error al cerrar el archivo CSV: " + e.getMessage());
+                    }
+                });
+    }
+
+    private FileChannel openChannel(String ruta) {
+        try {
+            return FileChannel.open(Path.of(ruta), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new NotFoundFile("No se ha encontrado el archivo: " + ruta);
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al abrir el archivo CSV: " + e.getMessage());
+        }
+    }
+
+    private List<FunkoCsvChunkParser.Chunk> splitCsv(FileChannel channel, int partes) {
+        try {
+            return FunkoCsvChunkParser.split(channel, partes);
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al leer el archivo CSV: " + e.getMessage());
+        }
+    }
+
     @Override
     public Mono<Void> exportJson(String ruta) {
         logger.debug("Exportando funkos a JSON, ruta: " + ruta);
@@ -91,4 +141,57 @@ public class FunkoStorageImpl implements FunkoStorage {
             }
         }));
     }
+
+    @Override
+    public Mono<Void> exportJson(String ruta, Flux<Funko> funkos, boolean pretty, boolean gzip) {
+        logger.debug("Exportando funkos a JSON en streaming, ruta: " + ruta + ", pretty: " + pretty + ", gzip: " + gzip);
+        Gson gson = new GsonBuilder().registerTypeAdapter(Funko.class, new LocalDateAdapter()).create();
+
+        // Cada funko se escribe en cuanto llega, así la memoria no depende del número de filas
+        return Mono.using(
+                () -> openJsonWriter(ruta, pretty, gzip),
+                writer -> Mono.fromRunnable(() -> writeJson(writer, JsonWriter::beginArray))
+                        .thenMany(funkos.limitRate(EXPORT_PREFETCH))
+                        .doOnNext(funko -> writeJson(writer, w -> gson.toJson(funko, Funko.class, w)))
+                        .then(Mono.fromRunnable(() -> writeJson(writer, JsonWriter::endArray))),
+                writer -> {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        throw new ErrorInFile("Error al cerrar el archivo JSON: " + e.getMessage());
+                    }
+                });
+    }
+
+    private JsonWriter openJsonWriter(String ruta, boolean pretty, boolean gzip) {
+        try {
+            FileChannel channel = FileChannel.open(Path.of(ruta), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            OutputStream out = Channels.newOutputStream(channel);
+            if (gzip) {
+                out = new GZIPOutputStream(out, EXPORT_BUFFER_SIZE);
+            }
+            out = new BufferedOutputStream(out, EXPORT_BUFFER_SIZE);
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (pretty) {
+                writer.setIndent("  ");
+            }
+            return writer;
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al abrir el archivo JSON: " + e.getMessage());
+        }
+    }
+
+    private void writeJson(JsonWriter writer, JsonWrite write) {
+        try {
+            write.apply(writer);
+        } catch (IOException e) {
+            throw new ErrorInFile("Error al escribir en el archivo JSON: " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface JsonWrite {
+        void apply(JsonWriter writer) throws IOException;
+    }
 }
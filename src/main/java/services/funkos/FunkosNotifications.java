@@ -1,11 +1,21 @@
 package services.funkos;
 
+import enums.OverflowPolicy;
 import models.Funko;
 import models.Notificacion;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.List;
+
 public interface FunkosNotifications {
     Flux<Notificacion<Funko>> getNotificationAsFlux();
 
+    Flux<Notificacion<Funko>> getNotificationAsFlux(String nombre, int bufferSize, OverflowPolicy policy);
+
+    Flux<List<Notificacion<Funko>>> getNotificationBatches(String nombre, int maxSize, Duration window);
+
     void notify(Notificacion<Funko> notificacion);
+
+    List<SubscriberMetrics> getSubscriberMetrics();
 }
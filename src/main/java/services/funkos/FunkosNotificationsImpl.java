@@ -1,35 +1,148 @@
 package services.funkos;
 
+import enums.OverflowPolicy;
 import models.Funko;
 import models.Notificacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bus de notificaciones sobre un Sinks.Many multicast. Se puede notificar desde varios hilos a la vez (las emisiones
+ * se serializan) y las notificaciones anteriores al primer suscriptor se guardan hasta que llega.
+ * <p>
+ * Cada suscriptor pide todo al bus y tiene su propio buffer acotado, con su política de desbordamiento, y su propio
+ * hilo de entrega, así que un suscriptor lento nunca frena a quien notifica ni al resto de suscriptores.
+ */
 public class FunkosNotificationsImpl implements FunkosNotifications {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Notificaciones que se guardan mientras no hay ningún suscriptor
+    public static final int DEFAULT_WARMUP_SIZE = 8192;
+    private static final Duration EMIT_RETRY = Duration.ofSeconds(1);
 
-    private static FunkosNotificationsImpl instance = new FunkosNotificationsImpl();
+    private static FunkosNotificationsImpl instance;
 
-    private final Flux<Notificacion<Funko>> funkosNotificationFlux;
-    private FluxSink<Notificacion<Funko>> funkosNotification;
+    private final Logger logger = LoggerFactory.getLogger(FunkosNotificationsImpl.class);
+    private final Sinks.Many<Notificacion<Funko>> sink;
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong subscriberIds = new AtomicLong();
+    private final AtomicLong warmupDropped = new AtomicLong();
 
-    private FunkosNotificationsImpl() {
-        this.funkosNotificationFlux = Flux.<Notificacion<Funko>>create(emitter -> this.funkosNotification = emitter).share();
+    FunkosNotificationsImpl(int warmupSize) {
+        this.sink = Sinks.many().multicast().onBackpressureBuffer(warmupSize, false);
     }
 
     public static synchronized FunkosNotificationsImpl getInstance() {
         if (instance == null) {
-            instance = new FunkosNotificationsImpl();
+            instance = new FunkosNotificationsImpl(DEFAULT_WARMUP_SIZE);
         }
         return instance;
     }
 
+    private static final class Subscriber {
+        private final String nombre;
+        private final OverflowPolicy policy;
+        private final int bufferSize;
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private Subscriber(String nombre, OverflowPolicy policy, int bufferSize) {
+            this.nombre = nombre;
+            this.policy = policy;
+            this.bufferSize = bufferSize;
+        }
+
+        private SubscriberMetrics metrics() {
+            return new SubscriberMetrics(nombre, policy, bufferSize, received.get(), delivered.get(), dropped.get());
+        }
+    }
+
+    /**
+     * Todas las notificaciones, con un buffer de {@link #DEFAULT_BUFFER_SIZE} que termina con error si se desborda,
+     * para que el suscriptor sepa que se ha perdido alguna.
+     */
     @Override
     public Flux<Notificacion<Funko>> getNotificationAsFlux() {
-        return funkosNotificationFlux;
+        return getNotificationAsFlux("suscriptor", DEFAULT_BUFFER_SIZE, OverflowPolicy.ERROR);
+    }
+
+    /**
+     * Notificaciones con un buffer propio de bufferSize elementos. Si el suscriptor no da abasto: DROP_OLDEST descarta
+     * las más antiguas del buffer, LATEST se queda solo con la última y ERROR termina el flujo con error. UNBOUNDED no
+     * pierde ninguna: el buffer crece lo que haga falta, así que solo sirve para suscriptores que no se quedan atrás
+     * mucho tiempo.
+     */
+    @Override
+    public Flux<Notificacion<Funko>> getNotificationAsFlux(String nombre, int bufferSize, OverflowPolicy policy) {
+        return Flux.defer(() -> {
+            long id = subscriberIds.incrementAndGet();
+            Subscriber subscriber = new Subscriber(nombre, policy, policy == OverflowPolicy.LATEST ? 1 : bufferSize);
+            subscribers.put(id, subscriber);
+            Flux<Notificacion<Funko>> recibidas = sink.asFlux().doOnNext(n -> subscriber.received.incrementAndGet());
+            Flux<Notificacion<Funko>> buffer = switch (policy) {
+                case DROP_OLDEST -> recibidas.onBackpressureBuffer(bufferSize, n -> subscriber.dropped.incrementAndGet(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+                // Un buffer de uno que descarta el antiguo es quedarse con la última, pero contando las descartadas
+                case LATEST -> recibidas.onBackpressureBuffer(1, n -> subscriber.dropped.incrementAndGet(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+                case ERROR -> recibidas.onBackpressureBuffer(bufferSize, n -> subscriber.dropped.incrementAndGet());
+                case UNBOUNDED -> recibidas.onBackpressureBuffer();
+            };
+            return buffer
+                    .publishOn(Schedulers.boundedElastic(), policy == OverflowPolicy.LATEST ? 1 : Math.min(bufferSize, 256))
+                    .doOnNext(n -> subscriber.delivered.incrementAndGet())
+                    // Antes de avisar al suscriptor, para que al recibir el final ya no aparezca en las métricas
+                    .doOnTerminate(() -> subscribers.remove(id))
+                    .doOnCancel(() -> subscribers.remove(id));
+        });
+    }
+
+    /**
+     * Notificaciones agrupadas en lotes de como mucho maxSize o de lo que llegue en window, reducidas a su efecto
+     * neto por id2 (ver {@link NotificationCoalescer}). Los lotes que se quedan vacíos no se emiten. Si el consumidor
+     * va lento los lotes esperan a que los pida en vez de terminar con error.
+     */
+    @Override
+    public Flux<List<Notificacion<Funko>>> getNotificationBatches(String nombre, int maxSize, Duration window) {
+        return getNotificationAsFlux(nombre, DEFAULT_BUFFER_SIZE, OverflowPolicy.ERROR)
+                // Con backpressure justo, mientras no se pidan lotes las notificaciones esperan en el buffer del
+                // suscriptor en vez de fallar con OverflowException al vencer la ventana
+                .bufferTimeout(maxSize, window, true)
+                .map(NotificationCoalescer::coalesce)
+                .filter(lote -> !lote.isEmpty());
     }
 
     @Override
     public void notify(Notificacion<Funko> notificacion) {
-        funkosNotification.next(notificacion);
+        // Si otro hilo está emitiendo se reintenta; si no hay suscriptores y el buffer está lleno se descarta
+        sink.emitNext(notificacion, (signal, result) -> {
+            if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                if (warmupDropped.getAndIncrement() == 0) {
+                    logger.warn("Buffer de notificaciones sin suscriptores lleno, se descartan notificaciones");
+                }
+                return false;
+            }
+            return Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY).onEmitFailure(signal, result);
+        });
+    }
+
+    @Override
+    public List<SubscriberMetrics> getSubscriberMetrics() {
+        return subscribers.values().stream().map(Subscriber::metrics).toList();
+    }
+
+    // Notificaciones descartadas por llegar sin suscriptores con el buffer lleno
+    public long getWarmupDropped() {
+        return warmupDropped.get();
     }
-}
\ No newline at end of file
+}
@@ -1,36 +1,77 @@
 package services.funkos;
 
 import enums.Modelo;
+import enums.OverflowPolicy;
 import enums.Tipo;
 import exceptions.Funko.FunkoNotFoundException;
 import models.Funko;
+import models.IdGenerator;
+import models.ImportReport;
 import models.Notificacion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import repositories.funkos.FunkoBatchLoader;
 import repositories.funkos.FunkoRepositoryImpl;
+import services.cache.BloomFilter;
+import services.cache.CacheStats;
+import services.cache.ConcurrentLruCache;
+import services.database.DataBaseManager;
 
-import java.util.Comparator;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class FunkosServiceImpl implements FunkosService {
+    // Los IDs que no existen se recuerdan poco tiempo para no ocultar altas hechas por fuera del servicio
+    public static final Duration NOT_FOUND_TTL = Duration.ofSeconds(5);
+    public static final int NOT_FOUND_MAX_SIZE = 10_000;
+    private static final int MAX_IMPORT_ERRORS = 10;
 
     private static FunkosServiceImpl instance;
     private final FunkoCache cache;
     private final Logger logger = LoggerFactory.getLogger(FunkosServiceImpl.class);
     private final FunkoRepositoryImpl funkoRepository;
     private final FunkosNotifications notification;
+    private final FunkoBatchLoader batchLoader;
+    private final ConcurrentLruCache<Long, Boolean> notFound = new ConcurrentLruCache<>(NOT_FOUND_MAX_SIZE, NOT_FOUND_TTL, null);
+    // Filtro opcional con los id2 existentes; null mientras no se active o si deja de estar al día
+    private volatile BloomFilter idFilter;
+    // Filtro que mantiene la suscripción actual, aunque aún no haya terminado de rellenarse
+    private BloomFilter idFilterPending;
+    private Disposable idFilterSubscription;
+    private final FunkoStatistics statistics = new FunkoStatistics();
+    private final FunkoNombreIndex nombreIndex = new FunkoNombreIndex();
+    // Para reconstruirlos tras una importación sin notificaciones
+    private volatile boolean statisticsEnabled;
+    private volatile boolean nombreIndexEnabled;
     private final FunkoStorageImpl funkoStorage = FunkoStorageImpl.getInstance();
+    private final int batchSize;
+    private final int importConcurrency;
+    private final int importRails;
 
 
     private FunkosServiceImpl(FunkoRepositoryImpl funkoRepository, FunkosNotifications notification) {
         this.funkoRepository = funkoRepository;
         this.cache = new FunkoCacheImpl();
+        this.batchLoader = new FunkoBatchLoader(funkoRepository);
         this.notification = notification;
-
+        DataBaseManager db = DataBaseManager.getInstance();
+        this.batchSize = db.getBatchSize();
+        this.importConcurrency = db.getImportConcurrency();
+        this.importRails = db.getImportRails();
     }
 
     public static synchronized FunkosServiceImpl getInstance(FunkoRepositoryImpl funkoRepository, FunkosNotifications notification) {
@@ -47,17 +88,168 @@ public class FunkosServiceImpl implements FunkosService {
 
     @Override
     public Flux<Funko> findByNombre(String nombre) {
-        return funkoRepository.findByNombre(nombre).flatMap(funko -> cache.put(funko.getId2(), funko).then(Mono.just(funko))).switchIfEmpty(Mono.error(new FunkoNotFoundException("No se ha encontrado ningún funko con el nombre: " + nombre)));
+        return searchByNombre(nombre).flatMap(funko -> cache.put(funko.getId2(), funko).then(Mono.just(funko))).switchIfEmpty(Mono.error(new FunkoNotFoundException("No se ha encontrado ningún funko con el nombre: " + nombre)));
     }
 
     @Override
     public Mono<Funko> findById(long id) {
-        return cache.get(id).switchIfEmpty(funkoRepository.findById(id).flatMap(funko1 -> cache.put(funko1.getId2(), funko1).then(Mono.just(funko1))).switchIfEmpty(Mono.error(new FunkoNotFoundException("Funko con ID: " + id + " no encontrado"))));
+        return Mono.defer(() -> {
+            BloomFilter filter = idFilter;
+            // Sabemos que no existe sin ir a la base de datos
+            if (notFound.getIfPresent(id) != null || (filter != null && !filter.mightContain(id))) {
+                return Mono.empty();
+            }
+            return cache.get(id, batchLoader::load).doOnSuccess(funko -> {
+                if (funko == null) {
+                    notFound.putNow(id, Boolean.TRUE);
+                }
+            });
+        }).switchIfEmpty(Mono.error(new FunkoNotFoundException("Funko con ID: " + id + " no encontrado")));
+    }
+
+    /**
+     * Activa el filtro de Bloom de IDs existentes: se rellena con los funkos de la base de datos y se mantiene con
+     * las notificaciones de alta y actualización. Hasta que termina de rellenarse no se usa.
+     */
+    public Mono<Void> enableIdFilter(long expectedInsertions, double fpp) {
+        return Mono.defer(() -> {
+            BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+            replaceIdFilter(filter);
+            // Nos suscribimos antes de leer la tabla para no perder las altas que lleguen mientras tanto. Si las
+            // notificaciones fallan el filtro deja de estar al día y diría que no existen IDs nuevos, así que se quita
+            Disposable suscripcion = notification.getNotificationAsFlux()
+                    .filter(notificacion -> notificacion.getTipo() != Tipo.DELETED)
+                    .subscribe(notificacion -> filter.put(notificacion.getContenido().getId2()),
+                            e -> disableIdFilter(filter, e));
+            keepIdFilterSubscription(filter, suscripcion);
+            return funkoRepository.findAll()
+                    .doOnNext(funko -> filter.put(funko.getId2()))
+                    .then(Mono.fromRunnable(() -> {
+                        synchronized (this) {
+                            // Si ha fallado o se ha vuelto a activar mientras se rellenaba, este filtro ya no vale
+                            if (filter != idFilterPending) {
+                                return;
+                            }
+                            idFilter = filter;
+                        }
+                        logger.debug("Filtro de IDs activado con " + filter.getNumBits() + " bits y " + filter.getNumHashes() + " funciones hash");
+                    }))
+                    .doOnError(e -> disableIdFilter(filter, e))
+                    .then();
+        });
+    }
+
+    // Cada activación sustituye a la anterior y cancela su suscripción
+    private synchronized void replaceIdFilter(BloomFilter filter) {
+        if (idFilterSubscription != null) {
+            idFilterSubscription.dispose();
+            idFilterSubscription = null;
+        }
+        idFilterPending = filter;
+        idFilter = null;
+    }
+
+    private synchronized void keepIdFilterSubscription(BloomFilter filter, Disposable suscripcion) {
+        if (filter == idFilterPending) {
+            idFilterSubscription = suscripcion;
+        } else {
+            suscripcion.dispose();
+        }
+    }
+
+    private synchronized void disableIdFilter(BloomFilter filter, Throwable e) {
+        // Solo si sigue siendo el filtro actual; uno sustituido ya se desactivó al sustituirlo
+        if (filter != idFilterPending) {
+            return;
+        }
+        logger.error("Filtro de IDs desactivado: " + e.getMessage());
+        if (idFilterSubscription != null) {
+            idFilterSubscription.dispose();
+            idFilterSubscription = null;
+        }
+        idFilterPending = null;
+        idFilter = null;
+    }
+
+    /**
+     * Calcula las estadísticas del catálogo y las mantiene al día con las notificaciones.
+     */
+    public Mono<Void> enableStatistics() {
+        return Mono.defer(() -> {
+            statisticsEnabled = true;
+            return statistics.start(funkoRepository.findAll(), notification.getNotificationAsFlux()).then();
+        });
+    }
+
+    public FunkoStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Construye el índice de trigramas de nombres y lo mantiene al día con las notificaciones. Mientras no esté
+     * listo las búsquedas por nombre siguen yendo a la base de datos.
+     */
+    public Mono<Void> enableNombreIndex() {
+        return Mono.defer(() -> {
+            nombreIndexEnabled = true;
+            return nombreIndex.start(funkoRepository.findAll(), notification.getNotificationAsFlux()).then();
+        });
+    }
+
+    // Las estadísticas y el índice no ven los cambios sin notificación: se desactivan y se vuelven a construir
+    private void invalidateViews() {
+        statistics.invalidate();
+        nombreIndex.invalidate();
+    }
+
+    private Mono<Void> rebuildViews() {
+        return Mono.when(statisticsEnabled ? enableStatistics() : Mono.empty(),
+                nombreIndexEnabled ? enableNombreIndex() : Mono.empty());
+    }
+
+    /**
+     * Guarda todas las notificaciones en un registro de cambios en disco, desde el que otros consumidores pueden
+     * ponerse al día a partir de cualquier secuencia. Al cerrar el registro deja de recibirlas.
+     */
+    public FunkoChangeLog enableChangeLog(Path directorio) {
+        FunkoChangeLog changeLog = new FunkoChangeLog(directorio);
+        // Sin límite de buffer: un hueco en el registro no se puede recuperar, y escribir una entrada es muy rápido
+        changeLog.attach(notification.getNotificationAsFlux("changelog", FunkosNotificationsImpl.DEFAULT_BUFFER_SIZE, OverflowPolicy.UNBOUNDED));
+        return changeLog;
+    }
+
+    // Funkos cuyo nombre contiene el texto, usando el índice si está disponible
+    private Flux<Funko> searchByNombre(String nombre) {
+        return Flux.defer(() -> {
+            if (!nombreIndex.isReady()) {
+                return funkoRepository.findByNombre(nombre);
+            }
+            long[] ids = nombreIndex.search(nombre);
+            return ids.length == 0 ? Flux.empty() : funkoRepository.findAllById(Arrays.stream(ids).boxed().toList());
+        });
+    }
+
+    // Un ID recién guardado deja de estar en la caché negativa y pasa al filtro, también al que se está rellenando:
+    // las altas sin notificación no llegarían de otro modo si se guardan después de que findAll haya pasado por ellas
+    private void registerId(long id) {
+        notFound.removeNow(id);
+        synchronized (this) {
+            // idFilter es null o este mismo filtro una vez relleno
+            if (idFilterPending != null) {
+                idFilterPending.put(id);
+            }
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.stats();
     }
 
     public Mono<Funko> saveWithNoNotifications(Funko funko) {
         logger.debug(("Guardando funko sin notificacion : " + funko));
-        return funkoRepository.save(funko).doOnSuccess(funko1 -> cache.put(funko1.getId2(), funko1));
+        return funkoRepository.save(funko)
+                .doOnNext(funko1 -> registerId(funko1.getId2()))
+                .flatMap(funko1 -> cache.put(funko1.getId2(), funko1).thenReturn(funko1));
     }
 
     @Override
@@ -68,11 +260,10 @@ public class FunkosServiceImpl implements FunkosService {
     public Mono<Funko> updateWithNoNotifications(Funko funko) {
         logger.debug("Actualizando funko sin notificacion: " + funko);
 
-        return funkoRepository.findById(funko.getId2())
+        return funkoRepository.update(funko)
                 .switchIfEmpty(Mono.error(new FunkoNotFoundException("Funko con id " + funko.getId2() + " no encontrado")))
-                .flatMap(existing -> funkoRepository.update(funko)
-                        .flatMap(updated -> cache.put(updated.getId2(), updated)
-                                .thenReturn(updated)));
+                .flatMap(updated -> cache.put(updated.getId2(), updated)
+                        .thenReturn(updated));
     }
 
     @Override
@@ -83,7 +274,9 @@ public class FunkosServiceImpl implements FunkosService {
 
     public Mono<Funko> deleteByIdWithoutNotification(long id) {
         logger.debug("Borrando funko sin notificación con id: " + id);
-        return funkoRepository.findById(id).switchIfEmpty(Mono.error(new FunkoNotFoundException("Funko con id " + id + " no encontrado"))).flatMap(funko -> funkoRepository.deleteById(id).then(Mono.just(funko)));
+        return funkoRepository.deleteByIdReturning(id)
+                .switchIfEmpty(Mono.error(new FunkoNotFoundException("Funko con id " + id + " no encontrado")))
+                .flatMap(funko -> cache.remove(id).thenReturn(funko));
     }
 
     @Override
@@ -96,30 +289,130 @@ public class FunkosServiceImpl implements FunkosService {
     public Mono<Void> deleteAll() {
         logger.debug("Eliminando todos los funkos");
         cache.clear();
-        return funkoRepository.deleteAll().then(Mono.empty());
+        // Después de borrar, para no perder las altas notificadas mientras tanto
+        return funkoRepository.deleteAll().then(Mono.fromRunnable(() -> {
+            statistics.clear();
+            nombreIndex.clear();
+        }));
+    }
+
+    public Mono<Void> exportToJson(String ruta) {
+        return exportToJson(ruta, true, ruta.endsWith(".gz"));
+    }
+
+    public Mono<Void> exportToJson(String ruta, boolean pretty, boolean gzip) {
+        logger.debug("Exportando funkos de la base de datos a JSON: " + ruta);
+        return funkoRepository.exportJson(ruta, pretty, gzip);
+    }
+
+    public Mono<ImportReport> importFromCsv() {
+        return importCsv(funkoStorage::loadCsv, true, 0);
+    }
+
+    public Mono<ImportReport> importFromCsvNoNotify() {
+        return importCsv(funkoStorage::loadCsv, false, 0);
+    }
+
+    /**
+     * Como importFromCsv, pero con el CSV de la ruta indicada leído por trozos con loadCsvMapped.
+     */
+    public Mono<ImportReport> importFromCsv(String ruta, boolean notificar) {
+        return importCsv(() -> funkoStorage.loadCsvMapped(ruta), notificar, 0);
+    }
+
+    /**
+     * Importación en paralelo con los rails configurados en db.importRails.
+     */
+    public Mono<ImportReport> importFromCsvParallel(String ruta, boolean notificar) {
+        return importFromCsvParallel(ruta, importRails, notificar);
+    }
+
+    /**
+     * Importación en paralelo: los funkos del CSV se reparten en rails según el hash de su id2. Cada rail guarda sus
+     * lotes en su propio hilo de Schedulers.parallel() y con su propia conexión, así que el ritmo crece con los núcleos
+     * mientras haya conexiones. Como cada rail retiene su conexión toda la importación, no se usan más rails que
+     * importConcurrency: si un rail esperase conexión, los demás acabarían parados esperándole.
+     */
+    public Mono<ImportReport> importFromCsvParallel(String ruta, int rails, boolean notificar) {
+        return importCsv(() -> funkoStorage.loadCsvMapped(ruta), notificar, Math.max(1, Math.min(rails, importConcurrency)));
     }
 
-    public void exportToJson(String ruta) {
-        funkoRepository.deleteAll().subscribe();
-        funkoRepository.exportJson(ruta).subscribe();
+    /**
+     * Borra los funkos y después inserta los del CSV en lotes. Sin rails se guardan como mucho importConcurrency
+     * lotes a la vez; con rails, cada uno guarda los suyos de uno en uno. En ambos casos solo se lee del fichero lo
+     * que cabe en los lotes en curso (más el bloque de id2 que se está numerando), así que si la base de datos va
+     * lenta se deja de leer. Un lote que falla se
+     * cuenta y no detiene la importación. Sin notificaciones, las estadísticas y el índice de nombres no se usan
+     * durante la importación y se reconstruyen al terminar.
+     */
+    private Mono<ImportReport> importCsv(Supplier<Flux<Funko>> csv, boolean notificar, int rails) {
+        return Mono.defer(() -> {
+            long inicio = System.nanoTime();
+            AtomicLong leidos = new AtomicLong();
+            AtomicLong fallidos = new AtomicLong();
+            List<String> errores = new CopyOnWriteArrayList<>();
+            BiConsumer<List<Funko>, Throwable> onBatchError = (lote, e) -> {
+                logger.error("Error al importar un lote de " + lote.size() + " funkos: " + e.getMessage());
+                fallidos.addAndGet(lote.size());
+                if (errores.size() < MAX_IMPORT_ERRORS) {
+                    errores.add(e.getMessage());
+                }
+            };
+            // Los id2 se asignan aquí, en el orden del fichero y antes de repartir por rails, y no al leer el CSV
+            Flux<Funko> funkos = IdGenerator.getInstance()
+                    .assign(Flux.defer(csv).doOnNext(funko -> leidos.incrementAndGet()).map(Funko::toBuilder));
+            if (!notificar) {
+                invalidateViews();
+            }
+            return deleteAll()
+                    .thenMany(rails > 0 ? saveInRails(funkos, rails, onBatchError) : saveInBatches(funkos, onBatchError))
+                    .doOnNext(funko -> {
+                        registerId(funko.getId2());
+                        if (notificar) {
+                            notification.notify(new Notificacion<>(Tipo.NEW, funko));
+                        }
+                    })
+                    .count()
+                    .map(importados -> new ImportReport(leidos.get(), importados, fallidos.get(), List.copyOf(errores),
+                            Duration.ofNanos(System.nanoTime() - inicio)))
+                    .flatMap(report -> notificar ? Mono.just(report) : rebuildViews().thenReturn(report))
+                    .doOnNext(report -> logger.info(report.toString()));
+        });
     }
 
-    public void importFromCsv() {
-        funkoRepository.deleteAll().subscribe();
-        funkoStorage.loadCsv().subscribe(funko -> save(funko).subscribe());
+    // Lo que limita la lectura es la demanda de flatMap hacia los lotes: pide importConcurrency al empezar y uno más
+    // cada vez que se termina de guardar uno. El 1 es solo el prefetch de los funkos guardados de cada lote
+    private Flux<Funko> saveInBatches(Flux<Funko> funkos, BiConsumer<List<Funko>, Throwable> onBatchError) {
+        return funkos.buffer(batchSize)
+                .flatMap(lote -> funkoRepository.saveAll(lote)
+                        .onErrorResume(e -> {
+                            onBatchError.accept(lote, e);
+                            return Flux.empty();
+                        }), importConcurrency, 1);
     }
 
-    public void importFromCsvNoNotify() {
-        funkoRepository.deleteAll().subscribe();
-        funkoStorage.loadCsv().subscribe(funko -> saveWithNoNotifications(funko).subscribe());
+    // ParallelFlux reparte en round-robin, así que los rails por hash se hacen con groupBy (un grupo por rail)
+    private Flux<Funko> saveInRails(Flux<Funko> funkos, int rails, BiConsumer<List<Funko>, Throwable> onBatchError) {
+        return funkos.groupBy(funko -> Math.floorMod(Long.hashCode(funko.getId2()), rails))
+                .flatMap(rail -> funkoRepository.saveBatches(rail.publishOn(Schedulers.parallel()).buffer(batchSize),
+                        onBatchError), rails);
+    }
+
+    // Con las estadísticas activadas y al día se responde sin ir a la base de datos
+    private Optional<FunkoStatistics.Snapshot> statisticsSnapshot() {
+        return statisticsEnabled ? statistics.findSnapshot() : Optional.empty();
     }
 
     public Mono<Funko> expensiveFunko() {
-        return findAll().sort(Comparator.comparingDouble(Funko::getPrecio)).last();
+        return Mono.defer(() -> statisticsSnapshot()
+                .map(snapshot -> Mono.justOrEmpty(snapshot.getMostExpensive()))
+                .orElseGet(funkoRepository::findMostExpensive));
     }
 
     public Mono<Double> averagePrice() {
-        return findAll().collect(Collectors.averagingDouble(Funko::getPrecio));
+        return Mono.defer(() -> statisticsSnapshot()
+                .map(snapshot -> Mono.just(snapshot.average()))
+                .orElseGet(funkoRepository::averagePrecio));
     }
 
     public Mono<Map<Modelo, List<Funko>>> groupByModelo() {
@@ -127,18 +420,23 @@ public class FunkosServiceImpl implements FunkosService {
     }
 
     public Mono<Map<Modelo, Long>> funkosByModelo() {
-        return findAll().collect(Collectors.groupingBy(Funko::getModelo, Collectors.counting()));
+        return Mono.defer(() -> statisticsSnapshot()
+                .map(snapshot -> Mono.just(snapshot.countByModelo()))
+                .orElseGet(funkoRepository::countByModelo));
     }
 
     public Flux<Funko> funkosIn2023() {
-        return findAll().filter(funko -> funko.getFechaLanzamiento().getYear() == 2023);
+        return funkoRepository.findByFechaLanzamientoBetween(LocalDate.of(2023, 1, 1), LocalDate.of(2024, 1, 1));
     }
 
     public Mono<Double> numberStitch() {
-        return findAll().filter(funko -> funko.getNombre().contains("Stitch")).count().map(Double::valueOf);
+        if (nombreIndex.isReady()) {
+            return Mono.fromSupplier(() -> (double) nombreIndex.count("Stitch"));
+        }
+        return funkoRepository.countByNombre("Stitch").map(Double::valueOf);
     }
 
     public Flux<Funko> funkoStitch() {
-        return findAll().filter(funko -> funko.getNombre().contains("Stitch"));
+        return searchByNombre("Stitch");
     }
 }
\ No newline at end of file
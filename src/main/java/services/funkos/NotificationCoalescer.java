@@ -0,0 +1,46 @@
+package services.funkos;
+
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduce un lote de notificaciones a su efecto neto por id2. Solo importa si el funko existía antes del lote (su
+ * primera notificación no es NEW) y si existe después (la última no es DELETED), con el contenido de la última:
+ * NEW + DELETED se anulan, NEW + UPDATED es un NEW, varias UPDATED son una y DELETED + NEW es un UPDATED.
+ */
+final class NotificationCoalescer {
+
+    private NotificationCoalescer() {
+    }
+
+    static List<Notificacion<Funko>> coalesce(List<Notificacion<Funko>> lote) {
+        // En el orden de la primera notificación de cada id2
+        Map<Long, Notificacion<Funko>[]> porId = new LinkedHashMap<>();
+        for (Notificacion<Funko> notificacion : lote) {
+            @SuppressWarnings("unchecked")
+            Notificacion<Funko>[] extremos = porId.computeIfAbsent(notificacion.getContenido().getId2(),
+                    id -> new Notificacion[]{notificacion, notificacion});
+            extremos[1] = notificacion;
+        }
+        List<Notificacion<Funko>> netas = new ArrayList<>(porId.size());
+        for (Notificacion<Funko>[] extremos : porId.values()) {
+            boolean existiaAntes = extremos[0].getTipo() != Tipo.NEW;
+            boolean existeDespues = extremos[1].getTipo() != Tipo.DELETED;
+            Funko contenido = extremos[1].getContenido();
+            if (existiaAntes && existeDespues) {
+                netas.add(extremos[0] == extremos[1] ? extremos[1] : new Notificacion<>(Tipo.UPDATED, contenido));
+            } else if (existiaAntes) {
+                netas.add(extremos[1]);
+            } else if (existeDespues) {
+                netas.add(extremos[0] == extremos[1] ? extremos[1] : new Notificacion<>(Tipo.NEW, contenido));
+            }
+        }
+        return netas;
+    }
+}
@@ -0,0 +1,14 @@
+package services.funkos;
+
+import enums.OverflowPolicy;
+
+/**
+ * Estado de un suscriptor de notificaciones: cuántas ha recibido del bus, cuántas le han llegado, cuántas se han
+ * descartado por desbordar su buffer y cuántas tiene pendientes (lag).
+ */
+public record SubscriberMetrics(String nombre, OverflowPolicy policy, int bufferSize, long received, long delivered,
+                                long dropped) {
+    public long lag() {
+        return Math.max(0, received - delivered - dropped);
+    }
+}
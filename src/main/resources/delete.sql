@@ -1 +1,3 @@
-DROP TABLE IF EXISTS FUNKOS;
\ No newline at end of file
+DROP TABLE IF EXISTS FUNKOS;
+DROP TABLE IF EXISTS ID2_ALLOCATOR;
+DROP TABLE IF EXISTS SCHEMA_VERSION;
\ No newline at end of file
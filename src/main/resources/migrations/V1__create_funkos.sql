@@ -1,4 +1,4 @@
-CREATE TABLE FUNKOS
+CREATE TABLE IF NOT EXISTS FUNKOS
 (
     ID               LONG AUTO_INCREMENT PRIMARY KEY,
     COD              CHAR(36) NOT NULL     DEFAULT RANDOM_UUID(),
@@ -9,4 +9,4 @@ CREATE TABLE FUNKOS
     FECHALANZAMIENTO DATE,
     CREATEDAT        TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     UPDATEDAT        TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
\ No newline at end of file
+);
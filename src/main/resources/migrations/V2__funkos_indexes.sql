@@ -0,0 +1,6 @@
+-- Si hay ID2 repetidos el índice único no se crea y la migración falla sin borrar nada (ver README)
+CREATE UNIQUE INDEX IF NOT EXISTS IDX_FUNKOS_ID2 ON FUNKOS (ID2);
+CREATE INDEX IF NOT EXISTS IDX_FUNKOS_MODELO ON FUNKOS (MODELO);
+CREATE INDEX IF NOT EXISTS IDX_FUNKOS_FECHALANZAMIENTO ON FUNKOS (FECHALANZAMIENTO);
+-- En el mismo orden que la consulta del más caro (ORDER BY PRECIO DESC, ID DESC) para leer solo la primera entrada
+CREATE INDEX IF NOT EXISTS IDX_FUNKOS_PRECIO ON FUNKOS (PRECIO DESC, ID DESC);
@@ -0,0 +1,10 @@
+-- Siguiente id2 libre: cada IdGenerator reserva bloques sumándole su tamaño
+CREATE TABLE IF NOT EXISTS ID2_ALLOCATOR
+(
+    NOMBRE    VARCHAR(64) PRIMARY KEY,
+    SIGUIENTE LONG NOT NULL
+);
+-- Empezamos detrás de los id2 que ya haya en la tabla, salvo que el contador ya exista (migración repetida)
+INSERT INTO ID2_ALLOCATOR (NOMBRE, SIGUIENTE)
+SELECT 'FUNKOS', (SELECT COALESCE(MAX(ID2), 0) + 1 FROM FUNKOS)
+WHERE NOT EXISTS (SELECT 1 FROM ID2_ALLOCATOR WHERE NOMBRE = 'FUNKOS');
@@ -0,0 +1,3 @@
+-- El más caro desempata por ID2 (ORDER BY PRECIO DESC, ID2 DESC), así que el índice pasa a seguir ese orden
+CREATE INDEX IF NOT EXISTS IDX_FUNKOS_PRECIO_ID2 ON FUNKOS (PRECIO DESC, ID2 DESC);
+DROP INDEX IF EXISTS IDX_FUNKOS_PRECIO;
@@ -0,0 +1,104 @@
+package models;
+
+import enums.Modelo;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import services.database.DataBaseManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+    private ConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = DataBaseManager.getInstance().getConnectionFactory();
+    }
+
+    private static Flux<Funko.FunkoBuilder> funkos(int n) {
+        return Flux.range(0, n).map(i -> Funko.builder().cod(UUID.randomUUID()).nombre("Funko " + i)
+                .modelo(Modelo.OTROS).precio(1.0).fechaLanzamiento(LocalDate.parse("2023-01-01")));
+    }
+
+    @Test
+    void idsUnicosEntreHilos() {
+        IdGenerator idGenerator = new IdGenerator(connectionFactory, 100);
+        List<Long> ids = Flux.range(0, 40_000)
+                .flatMap(i -> idGenerator.next().subscribeOn(Schedulers.parallel()), 64)
+                .collectList()
+                .block();
+        assertEquals(40_000, new HashSet<>(ids).size());
+    }
+
+    @Test
+    void cadaHiloTieneSuBloque() throws Exception {
+        // Con tantas franjas, dos hilos no caen en la misma
+        IdGenerator idGenerator = new IdGenerator(connectionFactory, 100, 1024);
+        ExecutorService otro = Executors.newSingleThreadExecutor();
+        try {
+            List<Long> mios = new ArrayList<>();
+            Set<Long> suyos = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                mios.add(idGenerator.next().block());
+                suyos.add(otro.submit(() -> idGenerator.next().block()).get());
+            }
+            // Los del otro hilo no se intercalan en el bloque de este
+            for (int i = 1; i < mios.size(); i++) {
+                assertEquals(mios.get(i - 1) + 1, mios.get(i));
+            }
+            assertEquals(50, suyos.size());
+            assertTrue(mios.stream().noneMatch(suyos::contains));
+        } finally {
+            otro.shutdown();
+        }
+    }
+
+    @Test
+    void asignaEnOrdenAunqueOtrosReserven() {
+        IdGenerator idGenerator = new IdGenerator(connectionFactory, 100);
+        Flux<List<Long>> flujos = Flux.range(0, 4)
+                .flatMap(f -> idGenerator.assign(funkos(1_050).publishOn(Schedulers.parallel()))
+                        .map(Funko::getId2)
+                        .collectList());
+        Set<Long> todos = new HashSet<>();
+        for (List<Long> ids : flujos.collectList().block()) {
+            assertEquals(1_050, ids.size());
+            for (int i = 1; i < ids.size(); i++) {
+                // Creciente en el orden del flujo y sin huecos dentro de cada tramo de 100
+                assertTrue(ids.get(i) > ids.get(i - 1));
+                if (i % 100 != 0) {
+                    assertEquals(ids.get(i - 1) + 1, ids.get(i));
+                }
+            }
+            todos.addAll(ids);
+        }
+        assertEquals(4 * 1_050, todos.size());
+    }
+
+    @Test
+    void noRepiteTrasReiniciar() {
+        IdGenerator antes = new IdGenerator(connectionFactory, 10);
+        Set<Long> usados = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            usados.add(antes.next().block());
+        }
+        // Otro generador con la misma base de datos, como tras un reinicio o desde otra JVM
+        IdGenerator despues = new IdGenerator(connectionFactory, 10);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(usados.add(despues.next().block()));
+            assertTrue(usados.add(antes.next().block()));
+        }
+    }
+}
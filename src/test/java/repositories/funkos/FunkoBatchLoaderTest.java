@@ -0,0 +1,126 @@
+package repositories.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FunkoBatchLoaderTest {
+    @Mock
+    FunkoRepository repository;
+
+    private static Funko funko(long id) {
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Funko " + id).modelo(Modelo.DISNEY)
+                .precio(10.0).fechaLanzamiento(LocalDate.parse("2023-01-01")).build();
+    }
+
+    @Test
+    void agrupaBusquedasEnUnaConsulta() {
+        when(repository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).filter(id -> id <= 30).map(FunkoBatchLoaderTest::funko);
+        });
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 100, Duration.ofMillis(50));
+
+        List<Funko> result = Flux.fromStream(LongStream.rangeClosed(1, 40).boxed())
+                .flatMap(id -> loader.load(id))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertAll(
+                () -> assertNotNull(result),
+                () -> assertEquals(30, result.size()),
+                () -> assertTrue(result.stream().allMatch(f -> f.getId2() <= 30))
+        );
+        verify(repository, times(1)).findAllById(anyCollection());
+        verify(repository, never()).findById(anyLong());
+    }
+
+    @Test
+    void respetaElTamañoMaximoDelLote() {
+        when(repository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(FunkoBatchLoaderTest::funko);
+        });
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 10, Duration.ofSeconds(10));
+
+        Long total = Flux.fromStream(LongStream.rangeClosed(1, 50).boxed())
+                .flatMap(id -> loader.load(id))
+                .count()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(50, total);
+        verify(repository, times(5)).findAllById(anyCollection());
+    }
+
+    @Test
+    void unSoloIdUsaFindById() {
+        when(repository.findById(7L)).thenReturn(Mono.just(funko(7)));
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 100, Duration.ofMillis(1));
+
+        assertEquals(7L, loader.load(7L).block(Duration.ofSeconds(5)).getId2());
+        verify(repository, never()).findAllById(anyCollection());
+    }
+
+    @Test
+    void propagaErroresATodoElLote() {
+        when(repository.findAllById(anyCollection())).thenReturn(Flux.error(new IllegalStateException("sin conexión")));
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 2, Duration.ofSeconds(10));
+
+        Mono<Funko> uno = loader.load(1L).cache();
+        Mono<Funko> dos = loader.load(2L).cache();
+        uno.subscribe(f -> {}, e -> {});
+        dos.subscribe(f -> {}, e -> {});
+
+        assertThrows(IllegalStateException.class, () -> uno.block(Duration.ofSeconds(5)));
+        assertThrows(IllegalStateException.class, () -> dos.block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void esperaSiTodosLosLotesEstanOcupados() {
+        // Consultas lentas y lotes que se cierran por tiempo: se llenan más lotes de los que pueden resolverse a la vez
+        lenient().when(repository.findById(anyLong())).thenAnswer(invocation ->
+                Mono.just(funko(invocation.getArgument(0))).delaySubscription(Duration.ofMillis(50)));
+        lenient().when(repository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(FunkoBatchLoaderTest::funko).delaySubscription(Duration.ofMillis(50));
+        });
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 2, Duration.ofMillis(1));
+
+        Long total = Flux.fromStream(LongStream.rangeClosed(1, 60).boxed())
+                .delayElements(Duration.ofMillis(1))
+                .flatMap(id -> loader.load(id))
+                .count()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(60, total);
+    }
+
+    @Test
+    void unaExcepcionSoloFallaSuLote() {
+        when(repository.findById(anyLong()))
+                .thenThrow(new IllegalStateException("sin conexión"))
+                .thenAnswer(invocation -> Mono.just(funko(invocation.getArgument(0))));
+        FunkoBatchLoader loader = new FunkoBatchLoader(repository, 100, Duration.ofMillis(1));
+
+        assertThrows(IllegalStateException.class, () -> loader.load(1L).block(Duration.ofSeconds(5)));
+        // El agrupador sigue atendiendo peticiones
+        assertEquals(2L, loader.load(2L).block(Duration.ofSeconds(5)).getId2());
+    }
+}
@@ -5,13 +5,18 @@ import models.Funko;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
 import services.database.DataBaseManager;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -52,6 +57,45 @@ class FunkoRepositoryTest {
         );
     }
 
+    @Test
+    void saveAll() throws SQLException {
+        List<Funko> funkos = LongStream.rangeClosed(1, 1201)
+                .mapToObj(id -> Funko.builder()
+                        .cod(UUID.randomUUID())
+                        .id2(id)
+                        .nombre("Funko " + id)
+                        .modelo(Modelo.ANIME)
+                        .precio(10.0)
+                        .fechaLanzamiento(LocalDate.parse("2021-10-07"))
+                        .build())
+                .toList();
+        List<Funko> savedFunkos = funkoRepository.saveAll(funkos).collectList().block();
+        List<Funko> foundFunkos = funkoRepository.findAll().collectList().block();
+        Optional<Funko> foundFunko = funkoRepository.findById(1201L).blockOptional();
+        assertAll(
+                () -> assertEquals(1201, savedFunkos.size()),
+                () -> assertEquals(1201, foundFunkos.size()),
+                () -> assertTrue(foundFunko.isPresent()),
+                () -> assertEquals("Funko 1201", foundFunko.get().getNombre()),
+                () -> assertEquals(funkos.get(1200).getCod(), foundFunko.get().getCod())
+        );
+    }
+
+    @Test
+    void saveBatchesSigueTrasUnLoteFallido() {
+        List<List<Funko>> fallidos = new ArrayList<>();
+        // El segundo lote repite el id2 5 y choca con el índice único
+        List<Funko> saved = funkoRepository.saveBatches(Flux.just(funkos(1, 10), funkos(5, 15), funkos(16, 20)),
+                (lote, e) -> fallidos.add(lote)).collectList().block();
+        assertAll(
+                () -> assertEquals(15, saved.size()),
+                () -> assertEquals(1, fallidos.size()),
+                () -> assertEquals(5L, fallidos.get(0).get(0).getId2()),
+                () -> assertEquals(15, funkoRepository.findAll().count().block()),
+                () -> assertTrue(funkoRepository.findById(11L).blockOptional().isEmpty())
+        );
+    }
+
     @Test
     void update() throws SQLException {
         Funko funko = Funko.builder()
@@ -107,6 +151,65 @@ class FunkoRepositoryTest {
         assertFalse(foundFunko.isPresent());
     }
 
+    @Test
+    void findAllById() throws SQLException {
+        List<Funko> funkos = LongStream.rangeClosed(1, 700)
+                .mapToObj(id -> Funko.builder()
+                        .cod(UUID.randomUUID())
+                        .id2(id)
+                        .nombre("Funko " + id)
+                        .modelo(Modelo.MARVEL)
+                        .precio(10.0)
+                        .fechaLanzamiento(LocalDate.parse("2022-01-01"))
+                        .build())
+                .toList();
+        funkoRepository.saveAll(funkos).blockLast();
+
+        List<Long> ids = LongStream.concat(LongStream.rangeClosed(2, 650), LongStream.of(2, 5000)).boxed().toList();
+        List<Funko> found = funkoRepository.findAllById(ids).collectList().block();
+        assertAll(
+                () -> assertNotNull(found),
+                () -> assertEquals(649, found.size()),
+                () -> assertEquals(LongStream.rangeClosed(2, 650).boxed().toList(),
+                        found.stream().map(Funko::getId2).sorted().toList()),
+                () -> assertEquals("Funko 2", found.stream().filter(f -> f.getId2() == 2).findFirst().orElseThrow().getNombre())
+        );
+    }
+
+    @Test
+    void agregados() throws SQLException {
+        List<Funko> funkos = List.of(
+                Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Stitch surfero").modelo(Modelo.DISNEY).precio(20.0).fechaLanzamiento(LocalDate.parse("2023-01-01")).build(),
+                Funko.builder().cod(UUID.randomUUID()).id2(2L).nombre("Iron Man").modelo(Modelo.MARVEL).precio(50.0).fechaLanzamiento(LocalDate.parse("2022-12-31")).build(),
+                Funko.builder().cod(UUID.randomUUID()).id2(3L).nombre("Stitch").modelo(Modelo.DISNEY).precio(30.0).fechaLanzamiento(LocalDate.parse("2023-12-31")).build(),
+                Funko.builder().cod(UUID.randomUUID()).id2(4L).nombre("Goku").modelo(Modelo.ANIME).precio(10.0).fechaLanzamiento(LocalDate.parse("2024-01-01")).build()
+        );
+        funkoRepository.saveAll(funkos).blockLast();
+
+        Funko masCaro = funkoRepository.findMostExpensive().block();
+        Double media = funkoRepository.averagePrecio().block();
+        Map<Modelo, Long> porModelo = funkoRepository.countByModelo().block();
+        List<Funko> en2023 = funkoRepository.findByFechaLanzamientoBetween(LocalDate.parse("2023-01-01"), LocalDate.parse("2024-01-01")).collectList().block();
+        Long stitch = funkoRepository.countByNombre("Stitch").block();
+        assertAll(
+                () -> assertEquals(2L, masCaro.getId2()),
+                () -> assertEquals(27.5, media),
+                () -> assertEquals(Map.of(Modelo.DISNEY, 2L, Modelo.MARVEL, 1L, Modelo.ANIME, 1L), porModelo),
+                () -> assertEquals(List.of(1L, 3L), en2023.stream().map(Funko::getId2).sorted().toList()),
+                () -> assertEquals(2L, stitch)
+        );
+    }
+
+    @Test
+    void agregadosSinFunkos() throws SQLException {
+        assertAll(
+                () -> assertFalse(funkoRepository.findMostExpensive().blockOptional().isPresent()),
+                () -> assertEquals(0.0, funkoRepository.averagePrecio().block()),
+                () -> assertTrue(funkoRepository.countByModelo().block().isEmpty()),
+                () -> assertEquals(0L, funkoRepository.countByNombre("Stitch").block())
+        );
+    }
+
     @Test
     void findAll() throws SQLException {
         Funko funko1 = Funko.builder()
@@ -144,6 +247,48 @@ class FunkoRepositoryTest {
                 () -> assertEquals(foundFunkos.get(1).getCod(), funko2.getCod()));
     }
 
+    @Test
+    void findAllPagina() throws SQLException {
+        funkoRepository.saveAll(funkos(1, 25)).blockLast();
+
+        List<Funko> primera = funkoRepository.findAll(null, 10).collectList().block();
+        List<Funko> ultima = funkoRepository.findAll(20L, 10).collectList().block();
+        assertAll(
+                () -> assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), primera.stream().map(Funko::getId2).toList()),
+                () -> assertEquals(LongStream.rangeClosed(21, 25).boxed().toList(), ultima.stream().map(Funko::getId2).toList()),
+                () -> assertTrue(funkoRepository.findAll(25L, 10).collectList().block().isEmpty())
+        );
+    }
+
+    @Test
+    void findAllPaginadoLiberaLaConexion() {
+        funkoRepository.saveAll(funkos(1, 53)).blockLast();
+        FunkoRepositoryImpl repository = (FunkoRepositoryImpl) funkoRepository;
+        var pool = DataBaseManager.getInstance().getConnectionPool();
+
+        Iterator<Funko> iterator = repository.findAllPaged(10).toIterable(1).iterator();
+        List<Long> ids = new ArrayList<>();
+        ids.add(iterator.next().getId2());
+        // Consumidor parado a mitad de página: las páginas leídas por delante ya han devuelto su conexión
+        assertEquals(0, pool.getMetrics().orElseThrow().acquiredSize());
+        iterator.forEachRemaining(funko -> ids.add(funko.getId2()));
+
+        assertEquals(LongStream.rangeClosed(1, 53).boxed().toList(), ids);
+    }
+
+    private static List<Funko> funkos(long desde, long hasta) {
+        return LongStream.rangeClosed(desde, hasta)
+                .mapToObj(id -> Funko.builder()
+                        .cod(UUID.randomUUID())
+                        .id2(id)
+                        .nombre("Funko " + id)
+                        .modelo(Modelo.ANIME)
+                        .precio(15.0)
+                        .fechaLanzamiento(LocalDate.parse("2022-01-01"))
+                        .build())
+                .toList();
+    }
+
     @Test
     void findByNombre() throws SQLException {
         Funko funko1 = Funko.builder()
@@ -187,11 +332,50 @@ class FunkoRepositoryTest {
                 .fechaLanzamiento(LocalDate.parse("2021-10-07"))
                 .build();
         Funko savedFunko = funkoRepository.save(funko1).block();
-        funkoRepository.deleteById(savedFunko.getId2()).block();
+        assertTrue(funkoRepository.deleteById(savedFunko.getId2()).block());
         Optional<Funko> foundFunko = funkoRepository.findById(savedFunko.getId2()).blockOptional();
         assertFalse(foundFunko.isPresent());
     }
 
+    @Test
+    void updateNoExiste() throws SQLException {
+        Funko funko = Funko.builder()
+                .cod(UUID.randomUUID())
+                .id2(95L)
+                .nombre("Rayo McQueen")
+                .modelo(Modelo.DISNEY)
+                .precio(100.0)
+                .fechaLanzamiento(LocalDate.parse("2021-10-07"))
+                .build();
+        assertFalse(funkoRepository.update(funko).blockOptional().isPresent());
+    }
+
+    @Test
+    void deleteByIdNoExiste() throws SQLException {
+        assertFalse(funkoRepository.deleteById(95L).block());
+    }
+
+    @Test
+    void deleteByIdReturning() throws SQLException {
+        Funko funko = Funko.builder()
+                .cod(UUID.randomUUID())
+                .id2(95L)
+                .nombre("Rayo McQueen")
+                .modelo(Modelo.DISNEY)
+                .precio(100.0)
+                .fechaLanzamiento(LocalDate.parse("2021-10-07"))
+                .build();
+        funkoRepository.save(funko).block();
+        Optional<Funko> deleted = funkoRepository.deleteByIdReturning(95L).blockOptional();
+        assertAll(
+                () -> assertTrue(deleted.isPresent()),
+                () -> assertEquals(funko.getCod(), deleted.get().getCod()),
+                () -> assertEquals(funko.getNombre(), deleted.get().getNombre()),
+                () -> assertFalse(funkoRepository.findById(95L).blockOptional().isPresent()),
+                () -> assertFalse(funkoRepository.deleteByIdReturning(95L).blockOptional().isPresent())
+        );
+    }
+
     @Test
     void deleteAll() throws SQLException {
         Funko funko1 = Funko.builder()
@@ -0,0 +1,17 @@
+package repositories.funkos;
+
+import enums.Modelo;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoRowMapperTest {
+
+    @Test
+    void modelo() {
+        for (Modelo modelo : Modelo.values()) {
+            assertSame(modelo, FunkoRowMapper.modelo(modelo.name()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> FunkoRowMapper.modelo("PIXAR"));
+    }
+}
@@ -0,0 +1,33 @@
+package services.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void sinFalsosNegativos() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        LongStream.rangeClosed(1, 10_000).parallel().forEach(filter::put);
+
+        assertTrue(LongStream.rangeClosed(1, 10_000).allMatch(filter::mightContain));
+    }
+
+    @Test
+    void falsosPositivosAcotados() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        LongStream.rangeClosed(1, 10_000).forEach(filter::put);
+
+        long falsosPositivos = LongStream.rangeClosed(100_001, 200_000).filter(filter::mightContain).count();
+        assertTrue(falsosPositivos < 2_000, "Demasiados falsos positivos: " + falsosPositivos);
+    }
+
+    @Test
+    void parametrosInvalidos() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1.0));
+    }
+}
@@ -0,0 +1,191 @@
+package services.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLruCacheTest {
+    private final AtomicLong ticker = new AtomicLong(TimeUnit.DAYS.toNanos(3));
+
+    private void advance(Duration duration) {
+        ticker.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void expireAfterAccess() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10, null, Duration.ofSeconds(90), ticker::get);
+        cache.putNow(1L, "uno");
+        advance(Duration.ofSeconds(60));
+        assertEquals("uno", cache.getIfPresent(1L));
+        advance(Duration.ofSeconds(60));
+        assertEquals("uno", cache.getIfPresent(1L));
+        advance(Duration.ofSeconds(91));
+        assertNull(cache.getIfPresent(1L));
+    }
+
+    @Test
+    void expireAfterWrite() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10, Duration.ofSeconds(10), null, ticker::get);
+        cache.putNow(1L, "uno");
+        advance(Duration.ofSeconds(6));
+        assertEquals("uno", cache.getIfPresent(1L));
+        advance(Duration.ofSeconds(6));
+        assertNull(cache.getIfPresent(1L));
+        cache.putNow(1L, "otro");
+        assertEquals("otro", cache.getIfPresent(1L));
+    }
+
+    @Test
+    void expiredEntriesAreReclaimedDuringWrites() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10_000, Duration.ofHours(2), null, ticker::get);
+        for (long i = 0; i < 5_000; i++) {
+            cache.putNow(i, "valor " + i);
+        }
+        advance(Duration.ofMinutes(119));
+        cache.putNow(-1L, "nuevo");
+        assertEquals(5_001, cache.size());
+
+        advance(Duration.ofMinutes(2));
+        cache.putNow(-2L, "otro");
+        assertAll(
+                () -> assertEquals(2, cache.size()),
+                () -> assertNull(cache.getIfPresent(0L)),
+                () -> assertEquals("nuevo", cache.getIfPresent(-1L))
+        );
+    }
+
+    @Test
+    void cleanUp() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10, Duration.ofSeconds(1), null, ticker::get);
+        cache.putNow(1L, "uno");
+        cache.putNow(2L, "dos");
+        advance(Duration.ofSeconds(3));
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10, null, Duration.ofSeconds(90), ticker::get);
+        cache.putNow(1L, "uno");
+        cache.putNow(2L, "dos");
+        cache.clear();
+        advance(Duration.ofSeconds(100));
+        cache.cleanUp();
+        assertAll(
+                () -> assertEquals(0, cache.size()),
+                () -> assertNull(cache.getIfPresent(1L))
+        );
+    }
+
+    @Test
+    void stats() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(2, Duration.ofSeconds(10), null, ticker::get);
+        cache.putNow(1L, "uno");
+        cache.getIfPresent(1L);
+        cache.getIfPresent(2L);
+        assertEquals("dos", cache.get(2L, id -> Mono.just("dos")).block());
+        assertNull(cache.get(3L, id -> Mono.empty()).block());
+        cache.putNow(4L, "cuatro");
+        advance(Duration.ofSeconds(11));
+        cache.cleanUp();
+
+        CacheStats stats = cache.stats();
+        assertAll(
+                () -> assertEquals(1, stats.getHitCount()),
+                () -> assertEquals(3, stats.getMissCount()),
+                () -> assertEquals(1, stats.getLoadSuccessCount()),
+                () -> assertEquals(1, stats.getLoadFailureCount()),
+                () -> assertEquals(1, stats.getEvictionCount()),
+                () -> assertEquals(2, stats.getExpirationCount()),
+                () -> assertEquals(0, stats.getSize()),
+                () -> assertEquals(0.25, stats.hitRate()),
+                () -> assertTrue(stats.getLoadLatencyP99() >= stats.getLoadLatencyP50())
+        );
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws InterruptedException {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10);
+        AtomicInteger cargas = new AtomicInteger();
+        Sinks.One<String> resultado = Sinks.one();
+        Function<Long, Mono<String>> loader = id -> {
+            cargas.incrementAndGet();
+            return resultado.asMono();
+        };
+
+        // Todos los hilos piden la clave a la vez mientras la carga sigue pendiente
+        int hilos = 8;
+        CountDownLatch salida = new CountDownLatch(1);
+        CountDownLatch suscritos = new CountDownLatch(hilos);
+        List<String> valores = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        for (int i = 0; i < hilos; i++) {
+            executor.submit(() -> {
+                salida.await();
+                cache.get(1L, loader).subscribe(valores::add);
+                suscritos.countDown();
+                return null;
+            });
+        }
+        salida.countDown();
+        assertTrue(suscritos.await(5, TimeUnit.SECONDS));
+        resultado.tryEmitValue("uno");
+        executor.shutdown();
+
+        assertAll(
+                () -> assertEquals(1, cargas.get()),
+                () -> assertEquals(hilos, valores.size()),
+                () -> assertEquals("uno", cache.getIfPresent(1L)),
+                () -> assertEquals("uno", cache.get(1L, loader).block()),
+                () -> assertEquals(1, cargas.get()),
+                () -> assertEquals(1, cache.stats().getLoadSuccessCount())
+        );
+    }
+
+    @Test
+    void putDuringLoadIsNotOverwritten() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10);
+        Sinks.One<String> resultado = Sinks.one();
+
+        CompletableFuture<String> cargado = cache.get(1L, id -> resultado.asMono()).toFuture();
+        // Se actualiza la clave mientras la carga lee el valor antiguo
+        cache.putNow(1L, "nuevo");
+        resultado.tryEmitValue("antiguo");
+
+        assertEquals("antiguo", cargado.join());
+        assertEquals("nuevo", cache.getIfPresent(1L));
+    }
+
+    @Test
+    void removeDuringLoadIsNotResurrected() {
+        ConcurrentLruCache<Long, String> cache = new ConcurrentLruCache<>(10);
+        Sinks.One<String> resultado = Sinks.one();
+        AtomicInteger cargas = new AtomicInteger();
+        Function<Long, Mono<String>> loader = id -> cargas.incrementAndGet() == 1 ? resultado.asMono() : Mono.just("recargado");
+
+        CompletableFuture<String> cargado = cache.get(1L, loader).toFuture();
+        cache.removeNow(1L);
+        resultado.tryEmitValue("borrado");
+
+        assertEquals("borrado", cargado.join());
+        assertNull(cache.getIfPresent(1L));
+        // La siguiente petición ya no se une a la carga obsoleta
+        assertEquals("recargado", cache.get(1L, loader).block());
+        assertEquals(2, cargas.get());
+    }
+}
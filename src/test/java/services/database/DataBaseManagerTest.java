@@ -0,0 +1,96 @@
+package services.database;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Statement;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import repositories.funkos.FunkoRepositoryImpl;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataBaseManagerTest {
+    private final DataBaseManager dataBaseManager = DataBaseManager.getInstance();
+
+    private List<String> query(String sql, Object... parametros) {
+        return Mono.usingWhen(
+                dataBaseManager.getConnectionPool().create(),
+                connection -> {
+                    Statement statement = connection.createStatement(sql);
+                    for (int i = 0; i < parametros.length; i++) {
+                        statement.bind(i, parametros[i]);
+                    }
+                    return Flux.from(statement.execute())
+                            .flatMap(result -> result.map((fila, datos) -> String.valueOf(fila.get(0))))
+                            .collectList();
+                },
+                Connection::close
+        ).block();
+    }
+
+    // Plan de la sentencia tal cual la usa el repositorio, con sus parámetros
+    private String explain(String sql, Object... parametros) {
+        return query("EXPLAIN " + sql, parametros).get(0);
+    }
+
+    @Test
+    void migracionesAplicadas() {
+        assertEquals(List.of("1", "2", "3", "4"), query("SELECT version FROM SCHEMA_VERSION ORDER BY version"));
+    }
+
+    @Test
+    void migrarDosVecesNoRepiteNada() {
+        dataBaseManager.migrate();
+        assertEquals(List.of("4"), query("SELECT COUNT(*) FROM SCHEMA_VERSION"));
+    }
+
+    @Test
+    void repetirMigracionesAMediasLasCompleta() {
+        // Como si las últimas migraciones hubieran fallado después de crear sus objetos y antes de registrarse
+        String contador = query("SELECT siguiente FROM ID2_ALLOCATOR WHERE nombre = 'FUNKOS'").get(0);
+        query("DELETE FROM SCHEMA_VERSION WHERE version >= 3");
+
+        dataBaseManager.migrate();
+
+        assertAll(
+                () -> assertEquals(List.of("1", "2", "3", "4"), query("SELECT version FROM SCHEMA_VERSION ORDER BY version")),
+                () -> assertEquals(List.of(contador), query("SELECT siguiente FROM ID2_ALLOCATOR WHERE nombre = 'FUNKOS'"))
+        );
+    }
+
+    @Test
+    void busquedasPorId2UsanIndice() {
+        String porId = explain(FunkoRepositoryImpl.FIND_BY_ID, 1L);
+        String porIds = explain(FunkoRepositoryImpl.findAllByIdQuery(3), 1L, 2L, 3L);
+        String actualizar = explain(FunkoRepositoryImpl.UPDATE, "x", "OTROS", 1.0, LocalDate.parse("2023-01-01"), 1L);
+        String borrar = explain(FunkoRepositoryImpl.DELETE_BY_ID, 1L);
+        assertAll(
+                () -> assertTrue(porId.contains("IDX_FUNKOS_ID2"), porId),
+                () -> assertTrue(porIds.contains("IDX_FUNKOS_ID2"), porIds),
+                () -> assertTrue(actualizar.contains("IDX_FUNKOS_ID2"), actualizar),
+                () -> assertTrue(borrar.contains("IDX_FUNKOS_ID2"), borrar)
+        );
+    }
+
+    @Test
+    void paginasRecorrenElIndiceDeId2() {
+        // Keyset: cada página empieza en el índice tras el último id2 y sale ya ordenada, sin ordenar la tabla
+        String pagina = explain(FunkoRepositoryImpl.FIND_PAGE, 100L, 50);
+        assertTrue(pagina.contains("IDX_FUNKOS_ID2") && pagina.contains("index sorted"), pagina);
+    }
+
+    @Test
+    void agregadosUsanIndices() {
+        String masCaro = explain(FunkoRepositoryImpl.FIND_MOST_EXPENSIVE);
+        String porModelo = explain(FunkoRepositoryImpl.COUNT_BY_MODELO);
+        String porFecha = explain(FunkoRepositoryImpl.FIND_BY_FECHA_LANZAMIENTO, LocalDate.parse("2023-01-01"), LocalDate.parse("2024-01-01"));
+        assertAll(
+                () -> assertTrue(masCaro.contains("IDX_FUNKOS_PRECIO_ID2") && masCaro.contains("index sorted"), masCaro),
+                () -> assertTrue(porModelo.contains("IDX_FUNKOS_MODELO") && porModelo.contains("group sorted"), porModelo),
+                () -> assertTrue(porFecha.contains("IDX_FUNKOS_FECHALANZAMIENTO"), porFecha)
+        );
+    }
+}
@@ -7,7 +7,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -46,6 +50,63 @@ class FunkoCacheImplTest {
         assertNull(cache.get(id).block());
     }
 
+    @Test
+    void maxSize() {
+        FunkoCacheImpl small = new FunkoCacheImpl(3);
+        for (long id = 1; id <= 10; id++) {
+            small.put(id, funko(id)).block();
+            // El primero se consulta siempre, así que nunca debería ser expulsado
+            small.get(1L).block();
+        }
+        assertAll(
+                () -> assertEquals(3, small.size()),
+                () -> assertNotNull(small.get(1L).block()),
+                () -> assertNotNull(small.get(10L).block())
+        );
+        small.shutdown();
+    }
+
+    @Test
+    void concurrentAccess() throws InterruptedException {
+        FunkoCacheImpl concurrent = new FunkoCacheImpl(50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tareas.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    long id = random.nextInt(200);
+                    switch (random.nextInt(4)) {
+                        case 0 -> concurrent.put(id, funko(id)).block();
+                        case 1 -> concurrent.remove(id).block();
+                        default -> {
+                            Funko found = concurrent.get(id).block();
+                            if (found != null) {
+                                assertEquals(id, found.getId2());
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> tarea : tareas) {
+            assertDoesNotThrow(() -> tarea.get());
+        }
+        assertTrue(concurrent.size() <= 50);
+        concurrent.shutdown();
+    }
+
+    @Test
+    void noExpiraPorFechaDeActualizacion() {
+        Long id = 95L;
+        Funko funko = Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).updatedAt(LocalDateTime.now().minusDays(1)).build();
+        cache.put(id, funko).block();
+        cache.cleanUp();
+        assertEquals(funko, cache.get(id).block());
+    }
+
     @Test
     void clear() throws InterruptedException {
         Long id = 95L;
@@ -54,4 +115,8 @@ class FunkoCacheImplTest {
         Thread.sleep(120000);
         assertNull(cache.get(id).block());
     }
+
+    private Funko funko(long id) {
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Funko " + id).modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+    }
 }
@@ -0,0 +1,82 @@
+package services.funkos;
+
+import enums.Modelo;
+import models.Funko;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoCatalogGeneratorTest {
+    @TempDir
+    Path directorio;
+
+    @Test
+    void mismaSemillaMismoCatalogo() throws IOException {
+        Path uno = directorio.resolve("uno.csv");
+        Path dos = directorio.resolve("dos.csv");
+        Path otra = directorio.resolve("otra.csv");
+
+        assertEquals(1000, FunkoCatalogGenerator.builder().seed(7).build().writeCsv(uno.toString(), 1000).block());
+        FunkoCatalogGenerator.builder().seed(7).build().writeCsv(dos.toString(), 1000).block();
+        FunkoCatalogGenerator.builder().seed(8).build().writeCsv(otra.toString(), 1000).block();
+
+        List<String> lineas = Files.readAllLines(uno);
+        assertEquals(1001, lineas.size());
+        assertEquals(FunkoCatalogGenerator.CSV_HEADER, lineas.get(0));
+        assertEquals(lineas, Files.readAllLines(dos));
+        assertNotEquals(lineas, Files.readAllLines(otra));
+    }
+
+    @Test
+    void respetaLaConfiguracion() {
+        LocalDate desde = LocalDate.of(2023, 1, 1);
+        LocalDate hasta = LocalDate.of(2023, 12, 31);
+        FunkoCatalogGenerator generator = FunkoCatalogGenerator.builder()
+                .pesosModelo(Map.of(Modelo.MARVEL, 1.0, Modelo.ANIME, 3.0))
+                .precioMediana(30).precioMin(9.99).precioMax(99.99)
+                .desde(desde).hasta(hasta)
+                .build();
+
+        List<Funko> funkos = generator.generate(20_000).map(Funko.FunkoBuilder::build).collectList().block();
+
+        assertEquals(20_000, funkos.size());
+        long anime = funkos.stream().filter(funko -> funko.getModelo() == Modelo.ANIME).count();
+        assertEquals(0.75, anime / 20_000.0, 0.02);
+        assertTrue(funkos.stream().allMatch(funko -> funko.getModelo() == Modelo.ANIME || funko.getModelo() == Modelo.MARVEL));
+        assertTrue(funkos.stream().allMatch(funko -> funko.getPrecio() >= 9.99 && funko.getPrecio() <= 99.99));
+        assertTrue(funkos.stream().allMatch(funko -> !funko.getFechaLanzamiento().isBefore(desde) && !funko.getFechaLanzamiento().isAfter(hasta)));
+        assertTrue(funkos.stream().allMatch(funko -> funko.getCod().version() == 4 && funko.getCod().variant() == 2));
+        assertEquals(20_000, funkos.stream().map(Funko::getCod).distinct().count());
+        // El primer personaje de cada modelo es el más repetido
+        long goku = funkos.stream().filter(funko -> funko.getNombre().contains("Goku")).count();
+        long sasuke = funkos.stream().filter(funko -> funko.getNombre().contains("Sasuke")).count();
+        assertTrue(goku > 3 * sasuke);
+    }
+
+    @Test
+    void elCsvSeLeeConFunkoStorage() {
+        Path csv = directorio.resolve("catalogo.csv");
+        FunkoCatalogGenerator generator = FunkoCatalogGenerator.builder().seed(3).build();
+        generator.writeCsv(csv.toString(), 500).block();
+
+        List<Funko> generados = generator.generate(500).map(Funko.FunkoBuilder::build).collectList().block();
+        List<Funko> leidos = FunkoStorageImpl.getInstance().loadCsvMapped(csv.toString()).collectList().block();
+
+        assertEquals(500, leidos.size());
+        assertTrue(generados.stream().anyMatch(funko -> funko.getNombre().contains("Stitch")));
+        for (int i = 0; i < leidos.size(); i++) {
+            assertEquals(generados.get(i).getNombre(), leidos.get(i).getNombre());
+            assertEquals(generados.get(i).getModelo(), leidos.get(i).getModelo());
+            assertEquals(generados.get(i).getPrecio(), leidos.get(i).getPrecio());
+            assertEquals(generados.get(i).getFechaLanzamiento(), leidos.get(i).getFechaLanzamiento());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoChangeLogTest {
+    // Caben unas pocas entradas por segmento para forzar el cambio de segmento
+    private static final int SEGMENT_SIZE = 512;
+
+    @TempDir
+    Path directorio;
+
+    private static Funko funko(long id, String nombre, double precio) {
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre(nombre).modelo(Modelo.MARVEL).precio(precio)
+                .fechaLanzamiento(LocalDate.parse("2023-01-01"))
+                .createdAt(LocalDateTime.parse("2023-10-01T10:15:30.123")).updatedAt(LocalDateTime.parse("2023-10-02T10:15:30.456"))
+                .build();
+    }
+
+    private long segmentos() throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros.count();
+        }
+    }
+
+    @Test
+    void escribirYLeer() throws IOException {
+        Funko funko = funko(7, "Iron Man ñ", 19.99);
+        try (FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE)) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i + 1, changeLog.append(Tipo.NEW, funko(i, "Funko " + i, i)));
+            }
+            assertEquals(21, changeLog.append(Tipo.UPDATED, funko));
+            Funko sinDatos = Funko.builder().id2(8L).createdAt(null).updatedAt(null).build();
+            changeLog.append(Tipo.DELETED, sinDatos);
+
+            assertTrue(segmentos() > 1);
+            List<FunkoChangeLog.Entry> entries = changeLog.read(1).collectList().block();
+            assertEquals(22, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(i + 1, entries.get(i).sequence());
+            }
+            assertEquals(Tipo.UPDATED, entries.get(20).tipo());
+            assertEquals(funko, entries.get(20).funko());
+            assertEquals(sinDatos, entries.get(21).funko());
+
+            // Se puede empezar en cualquier secuencia, esté en el segmento que esté
+            assertEquals(List.of(15L, 16L), changeLog.read(15).take(2).map(FunkoChangeLog.Entry::sequence).collectList().block());
+            assertEquals(0, changeLog.read(23).count().block());
+        }
+    }
+
+    @Test
+    void continuaAlReabrir() throws IOException {
+        try (FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                changeLog.append(Tipo.NEW, funko(i, "Funko " + i, i));
+            }
+        }
+        // Entrada a medias al final del segmento activo, como si se hubiera caído a mitad de escritura
+        Path activo;
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            activo = ficheros.sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(activo.toFile(), "rw")) {
+            long fin = 0;
+            while (fin + 4 <= raf.length()) {
+                raf.seek(fin);
+                int length = raf.readInt();
+                if (length == 0) {
+                    break;
+                }
+                fin += 4 + length;
+            }
+            raf.seek(fin);
+            raf.writeInt(200);
+            raf.writeLong(11);
+        }
+
+        try (FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE)) {
+            assertEquals(10, changeLog.getLastSequence());
+            assertEquals(11, changeLog.append(Tipo.NEW, funko(100, "Nuevo", 1)));
+            assertEquals(11, changeLog.read(1).count().block());
+        }
+    }
+
+    @Test
+    void compactarDejaLaUltimaDeCadaId() throws IOException {
+        try (FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE)) {
+            for (int ronda = 0; ronda < 5; ronda++) {
+                for (long id = 1; id <= 4; id++) {
+                    changeLog.append(ronda == 0 ? Tipo.NEW : Tipo.UPDATED, funko(id, "Funko " + id, ronda));
+                }
+            }
+            changeLog.append(Tipo.DELETED, funko(2, "Funko 2", 4));
+            long antes = segmentos();
+
+            long eliminadas = changeLog.compact();
+
+            List<FunkoChangeLog.Entry> entries = changeLog.read(0).collectList().block();
+            assertEquals(21 - entries.size(), eliminadas);
+            assertTrue(segmentos() < antes);
+            // Las secuencias siguen en orden y la última entrada de cada id2 es la original
+            for (int i = 1; i < entries.size(); i++) {
+                assertTrue(entries.get(i).sequence() > entries.get(i - 1).sequence());
+            }
+            for (long id = 1; id <= 4; id++) {
+                long finalId = id;
+                FunkoChangeLog.Entry ultima = entries.stream().filter(e -> e.funko().getId2() == finalId).reduce((a, b) -> b).orElseThrow();
+                assertEquals(id == 2 ? Tipo.DELETED : Tipo.UPDATED, ultima.tipo());
+                assertEquals(4, ultima.funko().getPrecio());
+            }
+            // Los segmentos cerrados ya no tienen entradas repetidas
+            assertEquals(0, changeLog.compact());
+        }
+    }
+
+    @Test
+    void seguirRetomaYRecibeLasNuevas() throws Exception {
+        try (FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE)) {
+            for (int i = 0; i < 5; i++) {
+                changeLog.append(Tipo.NEW, funko(i, "Funko " + i, i));
+            }
+            CompletableFuture<List<Long>> secuencias = changeLog.follow(4).map(FunkoChangeLog.Entry::sequence)
+                    .take(4).collectList().toFuture();
+
+            changeLog.append(Tipo.NEW, funko(5, "Funko 5", 5));
+            changeLog.append(Tipo.DELETED, funko(1, "Funko 1", 1));
+
+            assertEquals(List.of(4L, 5L, 6L, 7L), secuencias.get(5, TimeUnit.SECONDS));
+            // Al cerrar el registro los que lo siguen terminan
+            CompletableFuture<Long> total = changeLog.follow(1).count().toFuture();
+            changeLog.close();
+            assertEquals(7, total.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void attachRegistraHastaCerrar() {
+        Sinks.Many<Notificacion<Funko>> notificaciones = Sinks.many().multicast().onBackpressureBuffer();
+        FunkoChangeLog changeLog = new FunkoChangeLog(directorio, SEGMENT_SIZE);
+        Disposable suscripcion = changeLog.attach(notificaciones.asFlux());
+
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, funko(1, "Funko 1", 1)));
+        // Una que no se puede registrar no corta el flujo
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, Funko.builder().nombre("Sin id2").build()));
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.UPDATED, funko(1, "Funko 1b", 1)));
+        assertEquals(2, changeLog.getLastSequence());
+
+        changeLog.close();
+        assertTrue(suscripcion.isDisposed());
+        assertEquals(0, notificaciones.currentSubscriberCount());
+    }
+}
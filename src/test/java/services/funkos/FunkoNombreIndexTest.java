@@ -0,0 +1,97 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoNombreIndexTest {
+    private static final String[] PALABRAS = {"Stitch", "Iron", "Man", "Goku", "Mickey", "Tommy", "Spider", "Stitches", "Luffy"};
+    private final Sinks.Many<Notificacion<Funko>> notificaciones = Sinks.many().multicast().onBackpressureBuffer();
+    private FunkoNombreIndex index;
+    private List<Funko> funkos;
+
+    private static Funko funko(long id, String nombre) {
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre(nombre).modelo(Modelo.DISNEY).precio(10.0)
+                .fechaLanzamiento(LocalDate.parse("2023-01-01")).build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        funkos = LongStream.rangeClosed(1, 2000)
+                .mapToObj(id -> funko(id, PALABRAS[random.nextInt(PALABRAS.length)] + " " + PALABRAS[random.nextInt(PALABRAS.length)] + " " + id))
+                .toList();
+        index = new FunkoNombreIndex();
+        index.start(Flux.fromIterable(funkos), notificaciones.asFlux()).block();
+    }
+
+    private long[] bruteForce(List<Funko> funkos, String texto) {
+        return funkos.stream().filter(f -> f.getNombre().contains(texto)).mapToLong(Funko::getId2).sorted().toArray();
+    }
+
+    @Test
+    void buscaIgualQueContains() {
+        for (String texto : List.of("Stitch", "Stitches", "titc", "Man G", "ck", "y 1", "123", "a", "Zzz", "stitch")) {
+            assertArrayEquals(bruteForce(funkos, texto), index.search(texto), texto);
+        }
+        assertEquals(2000, index.size());
+        assertTrue(index.isReady());
+    }
+
+    @Test
+    void seMantieneConNotificaciones() {
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, funko(5000, "Stitch Experimento 626")));
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.UPDATED, funko(1, "Baby Yoda")));
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.DELETED, funko(2, "")));
+
+        List<Funko> esperados = new ArrayList<>(funkos.subList(2, funkos.size()));
+        esperados.add(funko(1, "Baby Yoda"));
+        esperados.add(funko(5000, "Stitch Experimento 626"));
+        for (String texto : List.of("Stitch", "Yoda", "Experimento", "Goku", " 2")) {
+            assertArrayEquals(bruteForce(esperados, texto), index.search(texto), texto);
+        }
+    }
+
+    @Test
+    void clear() {
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.count("Stitch"));
+    }
+
+    @Test
+    void errorEnNotificacionesDejaDeEstarListo() {
+        notificaciones.tryEmitError(new IllegalStateException("bus caído"));
+        assertFalse(index.isReady());
+
+        // Se recupera construyéndolo de nuevo
+        index.start(Flux.fromIterable(funkos), Flux.never()).block();
+        assertTrue(index.isReady());
+        assertArrayEquals(bruteForce(funkos, "Stitch"), index.search("Stitch"));
+    }
+
+    @Test
+    void invalidarDejaDeEstarListo() {
+        index.invalidate();
+        assertFalse(index.isReady());
+
+        // La suscripción anterior ya no aplica nada
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, funko(5000, "Stitch Experimento 626")));
+        index.start(Flux.fromIterable(funkos), Flux.never()).block();
+        assertArrayEquals(bruteForce(funkos, "Experimento"), index.search("Experimento"));
+    }
+}
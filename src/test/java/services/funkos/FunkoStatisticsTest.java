@@ -0,0 +1,151 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import repositories.funkos.FunkoRepositoryImpl;
+import services.database.DataBaseManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoStatisticsTest {
+    private final FunkoRepositoryImpl funkoRepository = FunkoRepositoryImpl.getInstance(DataBaseManager.getInstance());
+    private final Sinks.Many<Notificacion<Funko>> notificaciones = Sinks.many().multicast().onBackpressureBuffer();
+    private FunkoStatistics statistics;
+
+    private static Funko funko(long id, Modelo modelo, double precio) {
+        return Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Funko " + id).modelo(modelo).precio(precio)
+                .fechaLanzamiento(LocalDate.parse("2023-01-01")).build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        funkoRepository.deleteAll().block();
+        List<Funko> funkos = LongStream.rangeClosed(1, 200)
+                .mapToObj(id -> funko(id, Modelo.values()[(int) (id % Modelo.values().length)], (id * 37 % 100) + 0.99))
+                .toList();
+        funkoRepository.saveAll(funkos).blockLast();
+        statistics = new FunkoStatistics();
+        statistics.start(funkoRepository.findAll(), notificaciones.asFlux()).block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        funkoRepository.deleteAll().block();
+    }
+
+    private void assertConsistenteConSql() {
+        Funko masCaro = funkoRepository.findMostExpensive().block();
+        assertAll(
+                () -> assertEquals(funkoRepository.findAll().count().block(), statistics.count()),
+                () -> assertEquals(funkoRepository.averagePrecio().block(), statistics.averagePrice(), 1e-9),
+                () -> assertEquals(funkoRepository.countByModelo().block(), statistics.countByModelo()),
+                () -> assertEquals(masCaro.getId2(), statistics.mostExpensive().orElseThrow().getId2())
+        );
+    }
+
+    @Test
+    void semillaCoincideConSql() {
+        assertConsistenteConSql();
+    }
+
+    @Test
+    void cambiosCoincidenConSql() {
+        // Alta de un nuevo más caro
+        Funko nuevo = funko(500, Modelo.OTROS, 999.5);
+        funkoRepository.save(nuevo).block();
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, nuevo));
+        assertConsistenteConSql();
+
+        // Se abarata y cambia de modelo
+        Funko actualizado = funko(500, Modelo.ANIME, 1.5);
+        funkoRepository.update(actualizado).block();
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.UPDATED, actualizado));
+        assertConsistenteConSql();
+
+        // Se borran los más caros
+        Flux.fromIterable(funkoRepository.findAll().collectList().block())
+                .filter(f -> f.getPrecio() > 90)
+                .concatMap(f -> funkoRepository.deleteById(f.getId2()).thenReturn(f))
+                .doOnNext(f -> notificaciones.tryEmitNext(new Notificacion<>(Tipo.DELETED, f)))
+                .blockLast();
+        assertConsistenteConSql();
+    }
+
+    @Test
+    void empatesEnElMasCaroComoSql() {
+        // Se insertan en orden inverso al de su id2: el desempate no puede depender del orden de inserción
+        Funko mayor = funko(600, Modelo.OTROS, 999.5);
+        Funko menor = funko(550, Modelo.ANIME, 999.5);
+        funkoRepository.save(mayor).block();
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, mayor));
+        funkoRepository.save(menor).block();
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, menor));
+        assertConsistenteConSql();
+        assertEquals(600L, statistics.mostExpensive().orElseThrow().getId2());
+
+        // Y también al calcularlas desde la tabla
+        statistics.start(funkoRepository.findAll(), Flux.never()).block();
+        assertConsistenteConSql();
+    }
+
+    @Test
+    void notificacionesDuranteLaSemillaNoSePierden() {
+        Sinks.Many<Funko> semilla = Sinks.many().unicast().onBackpressureBuffer();
+        FunkoStatistics otras = new FunkoStatistics();
+        var arranque = otras.start(semilla.asFlux(), notificaciones.asFlux()).toFuture();
+
+        semilla.tryEmitNext(funko(1, Modelo.DISNEY, 10));
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.DELETED, funko(1, Modelo.DISNEY, 10)));
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, funko(2, Modelo.MARVEL, 20)));
+        assertFalse(otras.isReady());
+        semilla.tryEmitComplete();
+        arranque.join();
+
+        assertAll(
+                () -> assertEquals(1, otras.count()),
+                () -> assertEquals(20.0, otras.averagePrice()),
+                () -> assertEquals(2L, otras.mostExpensive().orElseThrow().getId2())
+        );
+    }
+
+    @Test
+    void errorEnNotificacionesDejaDeServirCifras() {
+        assertTrue(statistics.isReady());
+        notificaciones.tryEmitError(new IllegalStateException("bus caído"));
+
+        assertFalse(statistics.isReady());
+        assertThrows(IllegalStateException.class, statistics::count);
+
+        // Se recupera empezando de nuevo desde la base de datos
+        Funko nuevo = funko(500, Modelo.OTROS, 999.5);
+        funkoRepository.save(nuevo).block();
+        Sinks.Many<Notificacion<Funko>> otras = Sinks.many().multicast().onBackpressureBuffer();
+        statistics.start(funkoRepository.findAll(), otras.asFlux()).block();
+        assertTrue(statistics.isReady());
+        assertConsistenteConSql();
+    }
+
+    @Test
+    void invalidarDejaDeServirCifras() {
+        statistics.invalidate();
+        assertFalse(statistics.isReady());
+        assertThrows(IllegalStateException.class, statistics::getSnapshot);
+
+        // La suscripción anterior ya no aplica nada
+        notificaciones.tryEmitNext(new Notificacion<>(Tipo.NEW, funko(500, Modelo.OTROS, 999.5)));
+        statistics.start(funkoRepository.findAll(), Flux.never()).block();
+        assertConsistenteConSql();
+    }
+}
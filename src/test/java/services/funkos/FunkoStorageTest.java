@@ -1,16 +1,26 @@
 package services.funkos;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
 import models.Funko;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
 import routes.Routes;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class FunkoStorageTest {
     FunkoStorageImpl funkoStorage;
@@ -26,9 +36,73 @@ class FunkoStorageTest {
         assertFalse(funkos.isEmpty());
     }
 
+    @Test
+    void loadCsvMapped() {
+        List<Funko> funkos = funkoStorage.loadCsv().collectList().block();
+        List<Funko> mapped = funkoStorage.loadCsvMapped(Routes.getInstance().getRouteFunkosCsv()).collectList().block();
+        assertEquals(funkos.size(), mapped.size());
+        for (int i = 0; i < funkos.size(); i++) {
+            assertSameData(funkos.get(i), mapped.get(i));
+        }
+    }
+
+    @Test
+    void loadCsvMappedVariosTrozos(@TempDir Path dir) throws IOException {
+        List<String> lineas = Files.readAllLines(Paths.get(Routes.getInstance().getRouteFunkosCsv()));
+        List<String> grande = new ArrayList<>(List.of(lineas.get(0)));
+        for (int i = 0; i < 300; i++) {
+            grande.addAll(lineas.subList(1, lineas.size()));
+        }
+        Path csv = dir.resolve("funkos.csv");
+        Files.write(csv, grande);
+
+        List<Funko> funkos = funkoStorage.loadCsvMapped(Routes.getInstance().getRouteFunkosCsv()).collectList().block();
+        List<Funko> mapped = funkoStorage.loadCsvMapped(csv.toString()).collectList().block();
+        assertEquals(funkos.size() * 300, mapped.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertSameData(funkos.get(i % funkos.size()), mapped.get(i));
+        }
+        // Leer el CSV no reserva id2 en la base de datos; se asignan al importar
+        assertTrue(mapped.stream().allMatch(funko -> funko.getId2() == null));
+    }
+
     @Test
     void exportJson() {
         funkoStorage.exportJson(Routes.getInstance().getRouteFunkosJson());
         assertTrue(Files.exists(Paths.get(Routes.getInstance().getRouteFunkosJson())));
     }
-}
\ No newline at end of file
+
+    @Test
+    void exportJsonStreaming(@TempDir Path dir) throws IOException {
+        List<Funko> esperados = funkoStorage.loadCsv().collectList().block();
+        Flux<Funko> funkos = Flux.fromIterable(esperados);
+        Path pretty = dir.resolve("funkos.json");
+        Path compacto = dir.resolve("funkos.json.gz");
+
+        funkoStorage.exportJson(pretty.toString(), funkos, true, false).block();
+        funkoStorage.exportJson(compacto.toString(), funkos, false, true).block();
+
+        JsonArray deJson = JsonParser.parseString(Files.readString(pretty)).getAsJsonArray();
+        JsonArray deGzip;
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(compacto)), StandardCharsets.UTF_8)) {
+            deGzip = JsonParser.parseReader(reader).getAsJsonArray();
+        }
+        assertAll(
+                () -> assertEquals(esperados.size(), deJson.size()),
+                () -> assertEquals(deJson, deGzip),
+                () -> assertEquals(esperados.get(0).getCod().toString(), deJson.get(0).getAsJsonObject().get("cod").getAsString()),
+                () -> assertEquals(esperados.get(0).getNombre(), deJson.get(0).getAsJsonObject().get("nombre").getAsString()),
+                () -> assertTrue(Files.size(compacto) < Files.size(pretty))
+        );
+    }
+
+    private void assertSameData(Funko expected, Funko actual) {
+        assertAll(
+                () -> assertEquals(expected.getCod(), actual.getCod()),
+                () -> assertEquals(expected.getNombre(), actual.getNombre()),
+                () -> assertEquals(expected.getModelo(), actual.getModelo()),
+                () -> assertEquals(expected.getPrecio(), actual.getPrecio()),
+                () -> assertEquals(expected.getFechaLanzamiento(), actual.getFechaLanzamiento())
+        );
+    }
+}
@@ -0,0 +1,163 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.OverflowPolicy;
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkosNotificationsImplTest {
+
+    private static Notificacion<Funko> notificacion(long id) {
+        return new Notificacion<>(Tipo.NEW, Funko.builder().cod(UUID.randomUUID()).id2(id).nombre("Funko " + id)
+                .modelo(Modelo.DISNEY).precio(10.0).fechaLanzamiento(LocalDate.parse("2023-01-01")).build());
+    }
+
+    @Test
+    void notificacionesConcurrentes() throws InterruptedException {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(16);
+        List<Long> recibidas = new CopyOnWriteArrayList<>();
+        CountDownLatch fin = new CountDownLatch(40_000);
+        notifications.getNotificationAsFlux("todas", 100_000, OverflowPolicy.ERROR)
+                .subscribe(n -> {
+                    recibidas.add(n.getContenido().getId2());
+                    fin.countDown();
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int hilo = 0; hilo < 4; hilo++) {
+            long base = hilo * 10_000L;
+            executor.submit(() -> {
+                for (long i = 0; i < 10_000; i++) {
+                    notifications.notify(notificacion(base + i));
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(fin.await(10, TimeUnit.SECONDS));
+        assertEquals(40_000, recibidas.stream().distinct().count());
+    }
+
+    @Test
+    void noSePierdenLasAnterioresAlPrimerSuscriptor() {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(16);
+        notifications.notify(notificacion(1));
+        notifications.notify(notificacion(2));
+
+        List<Long> ids = notifications.getNotificationAsFlux().take(2).map(n -> n.getContenido().getId2())
+                .collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(1L, 2L), ids);
+    }
+
+    @Test
+    void suscriptorLentoNoFrenaLasNotificaciones() throws InterruptedException {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(16);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch lentoAlDia = new CountDownLatch(1);
+        CountDownLatch rapidoAlDia = new CountDownLatch(5_000);
+        List<Long> lento = new CopyOnWriteArrayList<>();
+        List<Long> rapido = new CopyOnWriteArrayList<>();
+        notifications.getNotificationAsFlux("lento", 10, OverflowPolicy.DROP_OLDEST).subscribe(n -> {
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lento.add(n.getContenido().getId2());
+            if (n.getContenido().getId2() == 4_999L) {
+                lentoAlDia.countDown();
+            }
+        });
+        notifications.getNotificationAsFlux("rapido", 10_000, OverflowPolicy.ERROR)
+                .subscribe(n -> {
+                    rapido.add(n.getContenido().getId2());
+                    rapidoAlDia.countDown();
+                });
+
+        long inicio = System.nanoTime();
+        for (long i = 0; i < 5_000; i++) {
+            notifications.notify(notificacion(i));
+        }
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(5));
+
+        SubscriberMetrics metrics = notifications.getSubscriberMetrics().stream()
+                .filter(m -> m.nombre().equals("lento")).findFirst().orElseThrow();
+        assertAll(
+                () -> assertEquals(5_000, metrics.received()),
+                () -> assertTrue(metrics.dropped() > 4_000, "Descartadas: " + metrics.dropped()),
+                () -> assertTrue(metrics.lag() > 0)
+        );
+
+        liberar.countDown();
+        assertTrue(lentoAlDia.await(5, TimeUnit.SECONDS));
+        assertTrue(rapidoAlDia.await(5, TimeUnit.SECONDS));
+        assertAll(
+                () -> assertEquals(5_000, rapido.size()),
+                // Las últimas siempre llegan al lento: se descartan las más antiguas
+                () -> assertEquals(4_999L, lento.get(lento.size() - 1)),
+                () -> assertTrue(lento.size() < 1_000)
+        );
+    }
+
+    @Test
+    void politicaLatestYError() throws InterruptedException {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(16);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch latestAlDia = new CountDownLatch(1);
+        CountDownLatch terminado = new CountDownLatch(1);
+        List<Long> latest = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        notifications.getNotificationAsFlux("latest", 10, OverflowPolicy.LATEST).subscribe(n -> {
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            latest.add(n.getContenido().getId2());
+            if (n.getContenido().getId2() == 999L) {
+                latestAlDia.countDown();
+            }
+        });
+        notifications.getNotificationAsFlux("error", 10, OverflowPolicy.ERROR)
+                .subscribe(n -> {
+                    try {
+                        liberar.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, e -> {
+                    error.set(e);
+                    terminado.countDown();
+                });
+
+        for (long i = 0; i < 1_000; i++) {
+            notifications.notify(notificacion(i));
+        }
+        liberar.countDown();
+        assertTrue(latestAlDia.await(5, TimeUnit.SECONDS));
+        assertTrue(terminado.await(5, TimeUnit.SECONDS));
+
+        assertAll(
+                () -> assertEquals(999L, latest.get(latest.size() - 1)),
+                () -> assertTrue(latest.size() <= 3, "Entregadas: " + latest),
+                () -> assertNotNull(error.get()),
+                // Al terminar deja de aparecer en las métricas
+                () -> assertTrue(notifications.getSubscriberMetrics().stream().noneMatch(m -> m.nombre().equals("error")))
+        );
+    }
+}
@@ -2,6 +2,7 @@ package services.funkos;
 
 import enums.Modelo;
 import models.Funko;
+import models.Notificacion;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -9,11 +10,13 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import repositories.funkos.FunkoRepositoryImpl;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -117,6 +120,105 @@ class FunkosServiceImplTest {
         verify(repository, times(1)).findById(1L);
     }
 
+    @Test
+    void findByIdNoExisteSeRecuerda() {
+        when(repository.findById(1L)).thenReturn(Mono.empty());
+
+        assertThrows(Exception.class, () -> service.findById(1L).blockOptional());
+        assertThrows(Exception.class, () -> service.findById(1L).blockOptional());
+
+        verify(repository, times(1)).findById(1L);
+    }
+
+    @Test
+    void findByIdFiltroDeIds() {
+        var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+
+        when(notifications.getNotificationAsFlux()).thenReturn(Flux.never());
+        when(repository.findAll()).thenReturn(Flux.just(funko));
+        when(repository.findById(1L)).thenReturn(Mono.just(funko));
+        service.enableIdFilter(1000, 0.001).block();
+
+        assertEquals(funko, service.findById(1L).block());
+        var result = assertThrows(Exception.class, () -> service.findById(2L).blockOptional());
+        assertTrue(result.getMessage().contains("Funko con ID: 2 no encontrado"));
+
+        verify(repository, never()).findById(2L);
+    }
+
+    @Test
+    void filtroDeIdsSeQuitaSiFallanLasNotificaciones() {
+        var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+        Sinks.Many<Notificacion<Funko>> feed = Sinks.many().multicast().directBestEffort();
+
+        when(notifications.getNotificationAsFlux()).thenReturn(feed.asFlux());
+        when(repository.findAll()).thenReturn(Flux.just(funko));
+        when(repository.findById(2L)).thenReturn(Mono.empty());
+        service.enableIdFilter(1000, 0.001).block();
+
+        // Sin el filtro, una búsqueda de un ID desconocido vuelve a ir a la base de datos
+        feed.tryEmitError(new IllegalStateException("desbordamiento"));
+        assertThrows(Exception.class, () -> service.findById(2L).blockOptional());
+        verify(repository, times(1)).findById(2L);
+    }
+
+    @Test
+    void filtroDeIdsIncluyeLoGuardadoMientrasSeRellena() {
+        var funko = Funko.builder().cod(UUID.randomUUID()).id2(5L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+        Sinks.Many<Funko> tabla = Sinks.many().unicast().onBackpressureBuffer();
+
+        when(notifications.getNotificationAsFlux()).thenReturn(Flux.never());
+        when(repository.findAll()).thenReturn(tabla.asFlux());
+        when(repository.save(funko)).thenReturn(Mono.just(funko));
+        var activado = service.enableIdFilter(1000, 0.001).toFuture();
+
+        // Se guarda sin notificación mientras se lee la tabla y la lectura ya no lo ve
+        service.saveWithNoNotifications(funko).block();
+        tabla.tryEmitComplete();
+        activado.join();
+
+        assertEquals(funko, service.findById(5L).block());
+    }
+
+    @Test
+    void dashboardDesdeLasEstadisticas() {
+        var rayo = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
+        var mate = Funko.builder().cod(UUID.randomUUID()).id2(2L).nombre("Mate").modelo(Modelo.DISNEY).precio(90.0).fechaLanzamiento(LocalDate.parse("2023-10-07")).build();
+
+        when(notifications.getNotificationAsFlux()).thenReturn(Flux.never());
+        when(repository.findAll()).thenReturn(Flux.just(rayo, mate));
+        service.enableStatistics().block();
+
+        assertAll("dashboard",
+                () -> assertEquals(rayo, service.expensiveFunko().block()),
+                () -> assertEquals(95.0, service.averagePrice().block()),
+                () -> assertEquals(Map.of(Modelo.DISNEY, 2L), service.funkosByModelo().block())
+        );
+        verify(repository, never()).findMostExpensive();
+        verify(repository, never()).averagePrecio();
+        verify(repository, never()).countByModelo();
+    }
+
+    @Test
+    void dashboardSinEstadisticasVaALaBaseDeDatos() {
+        when(repository.averagePrecio()).thenReturn(Mono.just(95.0));
+
+        assertEquals(95.0, service.averagePrice().block());
+        verify(repository, times(1)).averagePrecio();
+    }
+
+    @Test
+    void activarElFiltroOtraVezCancelaLaSuscripcionAnterior() {
+        Sinks.Many<Notificacion<Funko>> feed = Sinks.many().multicast().directBestEffort();
+
+        when(notifications.getNotificationAsFlux()).thenReturn(feed.asFlux());
+        when(repository.findAll()).thenReturn(Flux.empty());
+        service.enableIdFilter(1000, 0.001).block();
+        service.enableIdFilter(1000, 0.001).block();
+
+        assertEquals(1, feed.currentSubscriberCount());
+    }
+
 
     @Test
     void save() {
@@ -143,7 +245,6 @@ class FunkosServiceImplTest {
     void update() {
         var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
 
-        when(repository.findById(1L)).thenReturn(Mono.just(funko));
         when(repository.update(funko)).thenReturn(Mono.just(funko));
 
         var result = service.updateWithNoNotifications(funko).block();
@@ -165,38 +266,39 @@ class FunkosServiceImplTest {
         var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY)
                 .precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
 
-        when(repository.findById(1L)).thenReturn(Mono.empty());
+        when(repository.update(funko)).thenReturn(Mono.empty());
 
         var result = assertThrows(Exception.class, () -> service.updateWithNoNotifications(funko).block());
         System.out.println(result.getMessage());
         assertTrue(result.getMessage().contains("exceptions.Funko.FunkoNotFoundException: Funko con id 1 no encontrado"));
 
-        verify(repository, times(1)).findById(1L);
+        verify(repository, times(1)).update(funko);
+        verify(repository, never()).findById(1L);
     }
 
     @Test
     void deleteById() {
         var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
-        when(repository.findById(1L)).thenReturn(Mono.just(funko));
-        when(repository.deleteById(1L)).thenReturn(Mono.just(true));
+        when(repository.deleteByIdReturning(1L)).thenReturn(Mono.just(funko));
 
         var result = service.deleteByIdWithoutNotification(1L).block();
 
         assertEquals(result, funko);
 
-        verify(repository, times(1)).deleteById(1L);
+        verify(repository, times(1)).deleteByIdReturning(1L);
+        verify(repository, never()).findById(1L);
     }
 
     @Test
     void deleteByIdNoExiste() {
         var funko = Funko.builder().cod(UUID.randomUUID()).id2(1L).nombre("Rayo McQueen").modelo(Modelo.DISNEY).precio(100.0).fechaLanzamiento(LocalDate.parse("2021-10-07")).build();
-        when(repository.findById(1L)).thenReturn(Mono.empty());
+        when(repository.deleteByIdReturning(1L)).thenReturn(Mono.empty());
 
         var result = assertThrows(Exception.class, () -> service.deleteByIdWithoutNotification(1L).block());
         System.out.println(result.getMessage());
         assertTrue(result.getMessage().contains("exceptions.Funko.FunkoNotFoundException: Funko con id 1 no encontrado"));
 
-        verify(repository, times(1)).findById(1L);
+        verify(repository, times(1)).deleteByIdReturning(1L);
     }
 
     @Test
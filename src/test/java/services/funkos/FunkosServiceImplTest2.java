@@ -2,10 +2,12 @@ package services.funkos;
 
 import enums.Modelo;
 import models.Funko;
+import models.ImportReport;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import repositories.funkos.FunkoRepositoryImpl;
+import routes.Routes;
 import services.database.DataBaseManager;
 import services.funkos.FunkosNotificationsImpl;
 
@@ -23,7 +25,37 @@ class FunkosServiceImplTest2 {
 
     @BeforeEach
     void setUp() {
-        funkosService.importFromCsvNoNotify();
+        funkosService.importFromCsvNoNotify().block();
+    }
+
+    @Test
+    void importReportTest() {
+        ImportReport report = funkosService.importFromCsvNoNotify().block();
+        assertAll(
+                () -> assertNotNull(report),
+                () -> assertEquals(90, report.leidos()),
+                () -> assertEquals(90, report.importados()),
+                () -> assertEquals(0, report.fallidos()),
+                () -> assertTrue(report.errores().isEmpty()),
+                () -> assertTrue(report.filasPorSegundo() > 0),
+                () -> assertEquals(90, funkosService.findAll().count().block()),
+                // Los id2 se asignan al importar
+                () -> assertEquals(90, funkosService.findAll().map(Funko::getId2).distinct().count().block())
+        );
+    }
+
+    @Test
+    void importParallelTest() {
+        Map<Modelo, Long> secuencial = funkosService.funkosByModelo().block();
+        ImportReport report = funkosService.importFromCsvParallel(Routes.getInstance().getRouteFunkosCsv(), 4, false).block();
+        assertAll(
+                () -> assertNotNull(report),
+                () -> assertEquals(90, report.leidos()),
+                () -> assertEquals(90, report.importados()),
+                () -> assertEquals(0, report.fallidos()),
+                () -> assertEquals(secuencial, funkosService.funkosByModelo().block()),
+                () -> assertEquals(52.9900016784668, funkosService.expensiveFunko().block().getPrecio())
+        );
     }
 
     @Test
@@ -99,4 +131,17 @@ class FunkosServiceImplTest2 {
                 () -> assertTrue(funkoStitch.get(0).getNombre().contains("Stitch"))
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void importarSinNotificarReconstruyeIndiceYEstadisticas() {
+        funkosService.enableNombreIndex().block();
+        funkosService.enableStatistics().block();
+        funkosService.importFromCsvNoNotify().block();
+        assertAll(
+                () -> assertTrue(funkosService.getStatistics().isReady()),
+                () -> assertEquals(90, funkosService.getStatistics().count()),
+                () -> assertEquals(26, funkosService.numberStitch().block()),
+                () -> assertEquals(26, funkosService.funkoStitch().count().block())
+        );
+    }
+}
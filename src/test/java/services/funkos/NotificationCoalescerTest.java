@@ -0,0 +1,91 @@
+package services.funkos;
+
+import enums.Modelo;
+import enums.Tipo;
+import models.Funko;
+import models.Notificacion;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationCoalescerTest {
+
+    private static Notificacion<Funko> n(Tipo tipo, long id, String nombre) {
+        return new Notificacion<>(tipo, Funko.builder().cod(UUID.randomUUID()).id2(id).nombre(nombre)
+                .modelo(Modelo.DISNEY).precio(10.0).fechaLanzamiento(LocalDate.parse("2023-01-01")).build());
+    }
+
+    private static String resumen(List<Notificacion<Funko>> notificaciones) {
+        return String.join(", ", notificaciones.stream()
+                .map(n -> n.getTipo() + " " + n.getContenido().getId2() + " " + n.getContenido().getNombre())
+                .toList());
+    }
+
+    @Test
+    void efectoNetoPorId() {
+        List<Notificacion<Funko>> lote = List.of(
+                n(Tipo.NEW, 1, "a"), n(Tipo.UPDATED, 1, "b"),
+                n(Tipo.NEW, 2, "a"), n(Tipo.UPDATED, 2, "b"), n(Tipo.DELETED, 2, "b"),
+                n(Tipo.UPDATED, 3, "a"), n(Tipo.UPDATED, 3, "b"), n(Tipo.UPDATED, 3, "c"),
+                n(Tipo.UPDATED, 4, "a"), n(Tipo.DELETED, 4, "a"),
+                n(Tipo.DELETED, 5, "a"), n(Tipo.NEW, 5, "b"),
+                n(Tipo.DELETED, 6, "a"), n(Tipo.NEW, 6, "b"), n(Tipo.DELETED, 6, "b"),
+                n(Tipo.NEW, 7, "a")
+        );
+
+        assertEquals("NEW 1 b, UPDATED 3 c, DELETED 4 a, UPDATED 5 b, DELETED 6 b, NEW 7 a",
+                resumen(NotificationCoalescer.coalesce(lote)));
+    }
+
+    @Test
+    void lotesDelBus() {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(1024);
+        var lotes = notifications.getNotificationBatches("lotes", 1000, Duration.ofMillis(200)).take(1).collectList().toFuture();
+
+        for (long i = 0; i < 50; i++) {
+            notifications.notify(n(Tipo.NEW, i, "a"));
+            notifications.notify(n(Tipo.UPDATED, i, "b"));
+            if (i % 2 == 0) {
+                notifications.notify(n(Tipo.DELETED, i, "b"));
+            }
+        }
+
+        List<Notificacion<Funko>> lote = lotes.join().get(0);
+        assertAll(
+                () -> assertEquals(25, lote.size()),
+                () -> assertTrue(lote.stream().allMatch(n -> n.getTipo() == Tipo.NEW && n.getContenido().getNombre().equals("b"))),
+                () -> assertTrue(lote.stream().allMatch(n -> n.getContenido().getId2() % 2 == 1))
+        );
+    }
+
+    @Test
+    void lotesConConsumidorLento() throws InterruptedException {
+        FunkosNotificationsImpl notifications = new FunkosNotificationsImpl(1024);
+        // Cada lote tarda más que la ventana: se llenan y vencen mientras el consumidor no pide más
+        var ids = notifications.getNotificationBatches("lento", 10, Duration.ofMillis(1))
+                .concatMap(lote -> Mono.delay(Duration.ofMillis(5)).thenReturn(lote), 1)
+                .flatMapIterable(lote -> lote)
+                .take(1_000)
+                .map(n -> n.getContenido().getId2())
+                .collectList()
+                .toFuture();
+
+        // Poco a poco, para que venzan ventanas con lotes a medias
+        for (long i = 0; i < 1_000; i++) {
+            notifications.notify(n(Tipo.NEW, i, "a"));
+            if (i % 4 == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        assertEquals(LongStream.range(0, 1_000).boxed().toList(), ids.orTimeout(30, TimeUnit.SECONDS).join());
+    }
+}